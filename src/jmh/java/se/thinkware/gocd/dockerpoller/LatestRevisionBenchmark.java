@@ -0,0 +1,100 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperties;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
+
+import java.util.concurrent.TimeUnit;
+
+// A whole getLatestRevision against a registry that answers from memory,
+// without validators, so every poll gets and parses the full tag list, and
+// asks for the latest tag's manifest digest with a HEAD request. The image's
+// creation time is cached by digest after the first poll.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class LatestRevisionBenchmark {
+
+    private static final String MANIFEST_DIGEST = "sha256:0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private static final String CONFIG_DIGEST = "sha256:fedcba9876543210fedcba9876543210fedcba9876543210fedcba9876543210";
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int tags;
+
+    @Param({"semver", "sha", "timestamp"})
+    public String shape;
+
+    private PackageRepositoryPoller poller;
+    private PackageMaterialProperties packageConfiguration;
+    private PackageMaterialProperties repositoryConfiguration;
+
+    @Setup
+    public void setUp() {
+        String json = SyntheticTags.json(SyntheticTags.generate(shape, tags));
+        HttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest() {
+                    @Override
+                    public LowLevelHttpResponse execute() {
+                        MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                        if (url.endsWith("/tags/list")) {
+                            response.setStatusCode(200);
+                            response.setContentType("application/json; charset=utf-8");
+                            response.setContent(json);
+                        } else if (url.contains("/manifests/") && method.equals("HEAD")) {
+                            response.setStatusCode(200);
+                            response.addHeader("Docker-Content-Digest", MANIFEST_DIGEST);
+                        } else if (url.endsWith("/manifests/" + MANIFEST_DIGEST)) {
+                            response.setStatusCode(200);
+                            response.setContentType("application/vnd.docker.distribution.manifest.v2+json");
+                            response.setContent("{\"schemaVersion\":2,\"config\":{\"digest\":\"" + CONFIG_DIGEST + "\"}}");
+                        } else if (url.endsWith("/blobs/" + CONFIG_DIGEST)) {
+                            response.setStatusCode(200);
+                            response.setContentType("application/octet-stream");
+                            response.setContent("{\"architecture\":\"amd64\",\"created\":\"2018-01-02T03:04:05Z\"}");
+                        } else {
+                            response.setStatusCode(404);
+                        }
+                        return response;
+                    }
+                };
+            }
+        };
+        poller = new PackageRepositoryPoller(new PackageRepositoryConfigurationProvider(), transport);
+
+        packageConfiguration = new PackageMaterialProperties();
+        packageConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_IMAGE, new PackageMaterialProperty().withValue("benchmark/image"));
+        packageConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue(SyntheticTags.filter(shape)));
+
+        repositoryConfiguration = new PackageMaterialProperties();
+        repositoryConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_REGISTRY_URL, new PackageMaterialProperty().withValue("http://registry/v2/"));
+    }
+
+    @Benchmark
+    public String getLatestRevision() {
+        return poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision();
+    }
+}
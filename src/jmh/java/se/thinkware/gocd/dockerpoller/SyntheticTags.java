@@ -0,0 +1,68 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// Tag lists shaped like those of real repositories, sorted like registries
+// return them. The same shape and count always give the same tags.
+class SyntheticTags {
+
+    static List<String> generate(String shape, int count) {
+        Random random = new Random(count);
+        List<String> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tags.add(tag(shape, i, random));
+        }
+        Collections.sort(tags);
+        return tags;
+    }
+
+    // A filter that matches part of the tags of the shape, a prefix, a
+    // character class and a suffix.
+    static String filter(String shape) {
+        switch (shape) {
+            case "semver":
+                return "^1\\.";
+            case "sha":
+                return "^[0-7]";
+            case "timestamp":
+                return "[02468]$";
+            default:
+                throw new IllegalArgumentException(shape);
+        }
+    }
+
+    // The body of a tags/list response.
+    static String json(List<String> tags) {
+        StringBuilder json = new StringBuilder("{\"name\":\"benchmark/image\",\"tags\":[");
+        for (int i = 0; i < tags.size(); i++) {
+            json.append(i == 0 ? "\"" : ",\"").append(tags.get(i)).append('"');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String tag(String shape, int i, Random random) {
+        switch (shape) {
+            case "semver":
+                // Three major versions side by side, every tenth version a release candidate.
+                String version = String.format("%d.%d.%d", i % 3, i / 300, i / 3 % 100);
+                return i % 10 == 0 ? version + "-rc." + (1 + random.nextInt(3)) : version;
+            case "sha":
+                StringBuilder sha = new StringBuilder(40);
+                while (sha.length() < 40) {
+                    sha.append(Integer.toHexString(random.nextInt(16)));
+                }
+                return sha.toString();
+            case "timestamp":
+                LocalDateTime time = LocalDateTime.of(2017, 1, 1, 0, 0).plusMinutes(i * 7L);
+                return String.format("%04d%02d%02d-%02d%02d%02d-%d",
+                        time.getYear(), time.getMonthValue(), time.getDayOfMonth(),
+                        time.getHour(), time.getMinute(), time.getSecond(), i);
+            default:
+                throw new IllegalArgumentException(shape);
+        }
+    }
+}
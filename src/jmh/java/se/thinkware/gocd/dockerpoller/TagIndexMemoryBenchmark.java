@@ -0,0 +1,61 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Function;
+
+// Prints the heap used per tag by a list and a set of tag strings and by a
+// TagIndex, for images with many tags of the shapes in SyntheticTags. JMH
+// measures time and allocations, not what stays on the heap, so this is a
+// plain program, run with
+//
+//   mvn -P benchmarks test-compile exec:java -Dexec.classpathScope=test \
+//       -Dexec.mainClass=se.thinkware.gocd.dockerpoller.TagIndexMemoryBenchmark
+//
+// The numbers come from the used heap after a garbage collection, so they
+// are only as exact as the JVM lets them be.
+class TagIndexMemoryBenchmark {
+
+    private static final int[] SIZES = {1000, 100000, 1000000};
+
+    public static void main(String[] args) {
+        for (String shape : new String[]{"semver", "sha", "timestamp"}) {
+            for (int size : SIZES) {
+                List<String> tags = SyntheticTags.generate(shape, size);
+                System.out.println(String.format("%-10s %8d tags: list %6.1f, set %6.1f, index %6.1f bytes per tag",
+                        shape, size,
+                        bytesPerTag(tags, ArrayList::new),
+                        bytesPerTag(tags, HashSet::new),
+                        bytesPerTag(tags, TagIndex::of)));
+            }
+        }
+    }
+
+    private static volatile Object kept;
+
+    // The structure is built from copies of the tags, so that its strings
+    // aren't shared with the input.
+    private static double bytesPerTag(List<String> tags, Function<List<String>, Object> build) {
+        long before = usedHeap();
+        List<String> copies = new ArrayList<>(tags.size());
+        for (String tag : tags) {
+            copies.add(new String(tag.toCharArray()));
+        }
+        kept = build.apply(copies);
+        copies = null;
+        long after = usedHeap();
+        kept = null;
+        return (after - before) / (double) tags.size();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
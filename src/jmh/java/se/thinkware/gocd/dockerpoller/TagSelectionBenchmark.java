@@ -0,0 +1,124 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// The steps from a tag list response to the latest tag: parsing the tags,
+// filtering them and picking the biggest, on lists of 10 to 1M tags. Run
+// with -prof gc, the default of the benchmarks profile, to see the bytes
+// allocated per operation next to the throughput.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class TagSelectionBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int tags;
+
+    @Param({"semver", "sha", "timestamp"})
+    public String shape;
+
+    private List<String> tagList;
+    private String json;
+    private String filter;
+    private Pattern pattern;
+    private TagIndex index;
+
+    @Setup
+    public void setUp() {
+        tagList = SyntheticTags.generate(shape, tags);
+        json = SyntheticTags.json(tagList);
+        filter = SyntheticTags.filter(shape);
+        pattern = Pattern.compile(filter);
+        index = TagIndex.of(tagList);
+        // The ordering is sorted once per tag list, not per lookup.
+        index.latest(TagOrder.NATURAL, pattern);
+    }
+
+    @Benchmark
+    public int parseTags(Blackhole blackhole) throws IOException {
+        return DockerTagsList.forEachTag(new StringReader(json), blackhole::consume);
+    }
+
+    @Benchmark
+    public int filterTags() {
+        int matches = 0;
+        for (String tag : tagList) {
+            if (pattern.matcher(tag).find()) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    // How the latest tag was picked before TagOrder. It fails on numbers
+    // that don't fit an int, like in git shas, so those tags are compared
+    // as they are.
+    @Benchmark
+    public String maxByExpandNums() {
+        String latest = null;
+        String latestExpanded = null;
+        for (String tag : tagList) {
+            String expanded;
+            try {
+                expanded = ExpandNums.expandNums(tag);
+            } catch (NumberFormatException e) {
+                expanded = tag;
+            }
+            if (latest == null || expanded.compareTo(latestExpanded) > 0) {
+                latest = tag;
+                latestExpanded = expanded;
+            }
+        }
+        return latest;
+    }
+
+    @Benchmark
+    public String maxByNaturalKey() {
+        LatestTagCollector collector = new LatestTagCollector(null);
+        tagList.forEach(collector);
+        return collector.getLatest();
+    }
+
+    @Benchmark
+    public String maxBySemverKey() {
+        LatestTagCollector collector = new LatestTagCollector(null, TagOrder.SEMVER, null);
+        tagList.forEach(collector);
+        return collector.getLatest();
+    }
+
+    // Filtering and picking the biggest in one pass, as a poll does.
+    @Benchmark
+    public String filteredMax() {
+        FilterSet filterSet = new FilterSet();
+        filterSet.add(filter, pattern, null);
+        tagList.forEach(filterSet);
+        String[] latest = new String[1];
+        filterSet.forEachLatest((key, tag) -> latest[0] = tag);
+        return latest[0];
+    }
+
+    @Benchmark
+    public String filteredMaxFromIndex() {
+        return index.latest(TagOrder.NATURAL, pattern);
+    }
+}
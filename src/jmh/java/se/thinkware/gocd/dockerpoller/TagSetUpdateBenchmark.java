@@ -0,0 +1,63 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The first fetch of an image's tags, followed by a fetch of the same tags
+// or of the tags with one pushed since. The bytes allocated per operation
+// from -prof gc show what the polls of a big image cost.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class TagSetUpdateBenchmark {
+
+    private static final String IMAGE = "benchmark/image";
+
+    @Param({"1000", "100000", "1000000"})
+    public int tags;
+
+    @Param({"semver", "sha", "timestamp"})
+    public String shape;
+
+    private List<String> tagList;
+    private List<String> pushed;
+
+    @Setup
+    public void setUp() {
+        tagList = SyntheticTags.generate(shape, tags);
+        pushed = new ArrayList<>(tagList);
+        pushed.add("pushed");
+    }
+
+    @Benchmark
+    public TagSetTracker updateUnchanged() {
+        TagSetTracker tracker = new TagSetTracker();
+        tracker.update(IMAGE, tagList);
+        tracker.update(IMAGE, tagList);
+        return tracker;
+    }
+
+    @Benchmark
+    public TagSetTracker updateWithPush() {
+        TagSetTracker tracker = new TagSetTracker();
+        tracker.update(IMAGE, tagList);
+        tracker.update(IMAGE, pushed);
+        return tracker;
+    }
+}
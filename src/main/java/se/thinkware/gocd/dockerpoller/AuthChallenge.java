@@ -0,0 +1,88 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// A parsed WWW-Authenticate challenge from a docker registry, e.g.
+// Bearer realm="https://auth.docker.io/token",service="registry.docker.io",scope="repository:library/debian:pull"
+class AuthChallenge {
+
+    private static final Pattern REPOSITORY_PATH =
+            Pattern.compile("/v2/(.+)/(?:tags/list|manifests/[^/]+|blobs/[^/]+)$");
+    private static final Pattern REALM = parameterPattern("realm");
+    private static final Pattern SERVICE = parameterPattern("service");
+    private static final Pattern SCOPE = parameterPattern("scope");
+
+    private final String scheme;
+    private final String realm;
+    private final String service;
+    private final String scope;
+
+    AuthChallenge(String scheme, String realm, String service, String scope) {
+        this.scheme = scheme;
+        this.realm = realm;
+        this.service = service;
+        this.scope = scope;
+    }
+
+    static AuthChallenge parse(String authenticate) {
+        String parts[] = authenticate.split(" ");
+        if (parts.length < 2) {
+            return null;
+        }
+        String realm = getParameterFromAuthenticate(parts[1], REALM);
+        String service = getParameterFromAuthenticate(parts[1], SERVICE);
+        String scope = service == null ? null : getParameterFromAuthenticate(parts[1], SCOPE);
+        return new AuthChallenge(parts[0], realm, service, scope);
+    }
+
+    private static Pattern parameterPattern(String parameter) {
+        return Pattern.compile(parameter + "=\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
+    }
+
+    private static String getParameterFromAuthenticate(String authenticatePart, Pattern parameter) {
+        Matcher matcher = parameter.matcher(authenticatePart);
+        if(matcher.find()) {
+            return matcher.group(1);
+        }
+        return null;
+    }
+
+    // The scope a registry asks for when pulling from the repository in the
+    // given API path, or null for paths outside of a repository such as /v2/.
+    static String pullScopeFor(String path) {
+        if (path == null) {
+            return null;
+        }
+        Matcher matcher = REPOSITORY_PATH.matcher(path);
+        if (matcher.find()) {
+            return "repository:" + matcher.group(1) + ":pull";
+        }
+        return null;
+    }
+
+    AuthChallenge withScope(String scope) {
+        return new AuthChallenge(scheme, realm, service, service == null ? null : scope);
+    }
+
+    String getScheme() {
+        return scheme;
+    }
+
+    String getRealm() {
+        return realm;
+    }
+
+    String getService() {
+        return service;
+    }
+
+    String getScope() {
+        return scope;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s realm=%s service=%s scope=%s", scheme, realm, service, scope);
+    }
+}
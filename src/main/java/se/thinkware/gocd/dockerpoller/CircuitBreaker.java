@@ -0,0 +1,159 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.time.Clock;
+import java.time.Duration;
+
+// Stops sending requests to a registry that keeps failing, so that GoCD's
+// threads don't all wait for socket timeouts against a registry that is
+// down.
+//
+// The breaker is closed as long as less than the failure rate of the last
+// WINDOW requests failed. Then it opens, and requests fail right away with
+// a CircuitOpenException. After the open duration it is half open and lets
+// one trial request through. If that one succeeds the breaker closes,
+// otherwise it opens again.
+//
+// Connection errors and 5xx responses count as failures. Other responses,
+// e.g. 404 or 401, show that the registry is up.
+class CircuitBreaker {
+
+    private static final Logger logger = Logger.getLoggerFor(CircuitBreaker.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    static final int WINDOW = 20;
+    static final int MIN_REQUESTS = 5;
+    static final int DEFAULT_FAILURE_PERCENT = 50;
+    static final int DEFAULT_OPEN_SECONDS = 30;
+
+    private final String registry;
+    private final int failurePercent;
+    private final Duration openDuration;
+    private final Clock clock;
+
+    private final boolean[] failed = new boolean[WINDOW];
+    private int requests;
+    private int failures;
+    private int next;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(String registry, int failurePercent, Duration openDuration, Clock clock) {
+        this.registry = registry;
+        this.failurePercent = failurePercent;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    // The breaker configured by system properties.
+    static CircuitBreaker forRegistry(String registry) {
+        return new CircuitBreaker(
+                registry,
+                Integer.getInteger(Constants.BREAKER_FAILURE_PERCENT_PROPERTY, DEFAULT_FAILURE_PERCENT),
+                Duration.ofSeconds(Integer.getInteger(Constants.BREAKER_OPEN_SECONDS_PROPERTY, DEFAULT_OPEN_SECONDS)),
+                Clock.systemUTC()
+        );
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    // Throws if the request shouldn't be sent. Otherwise its outcome must be
+    // reported with succeeded or failed.
+    synchronized void beforeRequest() throws CircuitOpenException {
+        long now = clock.millis();
+        if (state == State.OPEN && now - openedAt >= openDuration.toMillis()) {
+            changeState(State.HALF_OPEN);
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            throw new CircuitOpenException(String.format(
+                    "Circuit breaker for %s is %s, a trial request is allowed and waiting for its response",
+                    registry, state));
+        }
+        if (state != State.CLOSED) {
+            long retryIn = Math.max(0, openDuration.toMillis() - (now - openedAt));
+            throw new CircuitOpenException(String.format(
+                    "Circuit breaker for %s is %s, not trying again for %d seconds",
+                    registry, state, (retryIn + 999) / 1000));
+        }
+    }
+
+    // The request allowed by beforeRequest wasn't sent after all, e.g. as
+    // the rate limiter wouldn't let it. A half open breaker lets the next
+    // request be the trial instead.
+    synchronized void notSent() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    synchronized void succeeded() {
+        if (state == State.HALF_OPEN) {
+            reset();
+            changeState(State.CLOSED);
+        } else {
+            record(false);
+        }
+    }
+
+    synchronized void failed() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && requests >= MIN_REQUESTS && failures * 100 >= failurePercent * requests) {
+            logger.warn(String.format("%d of the last %d requests to %s failed", failures, requests, registry));
+            open();
+        }
+    }
+
+    private void record(boolean failure) {
+        if (requests == WINDOW) {
+            if (failed[next]) {
+                failures--;
+            }
+        } else {
+            requests++;
+        }
+        failed[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % WINDOW;
+    }
+
+    private void open() {
+        openedAt = clock.millis();
+        reset();
+        changeState(State.OPEN);
+    }
+
+    private void reset() {
+        requests = 0;
+        failures = 0;
+        next = 0;
+        trialInFlight = false;
+    }
+
+    private void changeState(State newState) {
+        if (newState != state) {
+            String message = String.format("Circuit breaker for %s: %s -> %s", registry, state, newState);
+            if (newState == State.OPEN) {
+                logger.warn(message);
+            } else {
+                logger.info(message);
+            }
+            state = newState;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package se.thinkware.gocd.dockerpoller;
+
+// Too many recent requests to the registry have failed, see CircuitBreaker.
+class CircuitOpenException extends RegistryUnavailableException {
+
+    private static final long serialVersionUID = 1L;
+
+    CircuitOpenException(String message) {
+        super(message);
+    }
+}
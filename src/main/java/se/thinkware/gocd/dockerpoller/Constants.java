@@ -5,4 +5,28 @@ class Constants {
     public static final String DOCKER_REGISTRY_NAME = "DOCKER_REGISTRY_NAME";
     public static final String DOCKER_IMAGE = "DOCKER_IMAGE";
     public static final String DOCKER_TAG_FILTER = "DOCKER_TAG_FILTER";
+    public static final String DOCKER_TAG_ORDER = "DOCKER_TAG_ORDER";
+    public static final String DOCKER_MAX_CONNECTIONS = "DOCKER_MAX_CONNECTIONS";
+    public static final String DOCKER_TAGS_PAGE_SIZE = "DOCKER_TAGS_PAGE_SIZE";
+    public static final String DOCKER_MAX_REQUESTS_PER_MINUTE = "DOCKER_MAX_REQUESTS_PER_MINUTE";
+
+    // Keys in the data of a package revision, available in pipelines as GO_PACKAGE_<repo>_<package>_<key>.
+    public static final String DIGEST_DATA_KEY = "DIGEST";
+
+    // System properties for settings that are shared by all registries.
+    public static final String MAX_CONNECTIONS_PROPERTY = "dockerpoller.maxConnections";
+    public static final String MAX_CONNECTIONS_PER_REGISTRY_PROPERTY = "dockerpoller.maxConnectionsPerRegistry";
+    public static final String SNAPSHOT_FILE_PROPERTY = "dockerpoller.snapshotFile";
+    public static final String REFRESH_INTERVAL_PROPERTY = "dockerpoller.refreshInterval";
+    public static final String MAX_REFRESH_INTERVAL_PROPERTY = "dockerpoller.maxRefreshInterval";
+    public static final String REFRESH_THREADS_PROPERTY = "dockerpoller.refreshThreads";
+    public static final String BREAKER_FAILURE_PERCENT_PROPERTY = "dockerpoller.breakerFailurePercent";
+    public static final String BREAKER_OPEN_SECONDS_PROPERTY = "dockerpoller.breakerOpenSeconds";
+    public static final String CONNECT_TIMEOUT_PROPERTY = "dockerpoller.connectTimeout";
+    public static final String READ_TIMEOUT_PROPERTY = "dockerpoller.readTimeout";
+    public static final String REQUEST_DEADLINE_PROPERTY = "dockerpoller.requestDeadline";
+    public static final String HEDGE_PERCENTILE_PROPERTY = "dockerpoller.hedgePercentile";
+    public static final String NOTIFICATION_PORT_PROPERTY = "dockerpoller.notificationPort";
+    public static final String NOTIFICATION_ADDRESS_PROPERTY = "dockerpoller.notificationAddress";
+    public static final String NOTIFICATION_SECRET_PROPERTY = "dockerpoller.notificationSecret";
 }
\ No newline at end of file
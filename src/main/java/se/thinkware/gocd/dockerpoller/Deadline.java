@@ -0,0 +1,56 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+// How long a plugin request may spend talking to registries. The deadline
+// is kept per thread, so that every HTTP call made on behalf of the request
+// can tell how much time is left without it being passed around.
+final class Deadline {
+
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    // Runs the work with a deadline, unless the thread already has an earlier one.
+    static <T> T within(Duration timeout, Supplier<T> work) {
+        Deadline outer = current.get();
+        Deadline deadline = new Deadline(System.nanoTime() + timeout.toNanos());
+        if (outer != null && outer.expiresAtNanos - deadline.expiresAtNanos < 0) {
+            deadline = outer;
+        }
+        current.set(deadline);
+        try {
+            return work.get();
+        } finally {
+            if (outer == null) {
+                current.remove();
+            } else {
+                current.set(outer);
+            }
+        }
+    }
+
+    // Milliseconds left for the current thread, or Long.MAX_VALUE if there is no deadline.
+    static long remainingMillis() {
+        Deadline deadline = current.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, (deadline.expiresAtNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    // The milliseconds left, always more than zero, as a timeout of zero
+    // means no timeout at all to HTTP clients.
+    static long check(String what) throws DeadlineExceededException {
+        long remaining = remainingMillis();
+        if (remaining <= 0) {
+            throw new DeadlineExceededException(String.format("Out of time before %s", what));
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,11 @@
+package se.thinkware.gocd.dockerpoller;
+
+// The plugin request ran out of time, see Deadline.
+class DeadlineExceededException extends RegistryUnavailableException {
+
+    private static final long serialVersionUID = 1L;
+
+    DeadlineExceededException(String message) {
+        super(message);
+    }
+}
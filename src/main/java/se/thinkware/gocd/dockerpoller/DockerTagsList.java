@@ -1,8 +1,17 @@
 package se.thinkware.gocd.dockerpoller;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 class DockerTagsList {
 
@@ -29,4 +38,80 @@ class DockerTagsList {
         this.tags = tags;
     }
 
-}
\ No newline at end of file
+    // Reads a tag list response one tag at a time without building the list.
+    // Returns the number of tags given to the consumer.
+    static int forEachTag(Reader json, Consumer<String> consumer) throws IOException {
+        JsonReader reader = new JsonReader(json);
+        int count = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("tags") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        consumer.accept(reader.nextString());
+                        count++;
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return count;
+    }
+
+    static class JsonAdapter extends TypeAdapter<DockerTagsList> {
+
+        @Override
+        public void write(JsonWriter out, DockerTagsList tagsList) throws IOException {
+            out.beginObject();
+            out.name("name").value(tagsList.name);
+            out.name("tags");
+            if (tagsList.tags == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (String tag : tagsList.tags) {
+                    out.value(tag);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public DockerTagsList read(JsonReader in) throws IOException {
+            DockerTagsList tagsList = new DockerTagsList();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else if (name.equals("name")) {
+                    tagsList.name = in.nextString();
+                } else if (name.equals("tags")) {
+                    tagsList.tags = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            tagsList.tags.add(null);
+                        } else {
+                            tagsList.tags.add(in.nextString());
+                        }
+                    }
+                    in.endArray();
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return tagsList;
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package se.thinkware.gocd.dockerpoller;
+
+// The literal text that every tag matching a tag filter must start with,
+// e.g. "release-" for ^release-[0-9]+ and "v2." for ^v2\.
+//
+// Only filters anchored with ^ and without alternation have one. Complete
+// means that the filter is nothing but the anchored literal, so that
+// starting with the prefix is the same as matching the filter.
+final class FilterPrefix {
+
+    private static final String META = ".[]{}()*+?^$|";
+    private static final String ESCAPED_LITERALS = "\\.[]{}()*+?^$|/-:";
+    private static final String OPTIONAL_QUANTIFIERS = "*?{";
+
+    private final String prefix;
+    private final boolean complete;
+
+    private FilterPrefix(String prefix, boolean complete) {
+        this.prefix = prefix;
+        this.complete = complete;
+    }
+
+    String getPrefix() {
+        return prefix;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    // The prefix of the filter, or null if it has none.
+    static FilterPrefix of(String filter) {
+        if (filter == null || !filter.startsWith("^") || hasAlternation(filter)) {
+            return null;
+        }
+        StringBuilder prefix = new StringBuilder();
+        int i = 1;
+        int length = filter.length();
+        while (i < length) {
+            char c = filter.charAt(i);
+            char literal;
+            int consumed;
+            if (c == '\\') {
+                if (i + 1 >= length || ESCAPED_LITERALS.indexOf(filter.charAt(i + 1)) < 0) {
+                    break;
+                }
+                literal = filter.charAt(i + 1);
+                consumed = 2;
+            } else if (META.indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                consumed = 1;
+            }
+            char next = i + consumed < length ? filter.charAt(i + consumed) : 0;
+            if (OPTIONAL_QUANTIFIERS.indexOf(next) >= 0 && next != 0) {
+                // The literal may not be there at all.
+                break;
+            }
+            prefix.append(literal);
+            i += consumed;
+            if (next == '+') {
+                break;
+            }
+        }
+        if (prefix.length() == 0) {
+            return null;
+        }
+        return new FilterPrefix(prefix.toString(), i == length);
+    }
+
+    // Alternatives outside of groups and character classes, e.g. ^a|b
+    private static boolean hasAlternation(String filter) {
+        boolean inClass = false;
+        int depth = 0;
+        for (int i = 0; i < filter.length(); i++) {
+            char c = filter.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
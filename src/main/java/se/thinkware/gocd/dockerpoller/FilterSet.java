@@ -0,0 +1,114 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+// Finds the latest tag for several filters of the same image in one pass
+// over its tags.
+//
+// Filters with a literal prefix, see FilterPrefix, are kept in a trie, so
+// that each tag is only matched against the filters whose prefix it starts
+// with. For filters that are nothing but a prefix, or match everything, the
+// regular expression isn't run at all. Other filters see every tag.
+class FilterSet implements Consumer<String> {
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private final List<LatestTagCollector> collectors = new ArrayList<>();
+
+        Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index < 0 ? null : children[index];
+        }
+
+        Node addChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newKeys[insertAt] = key;
+            newChildren[insertAt] = new Node();
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insertAt];
+        }
+    }
+
+    private final Node root = new Node();
+    private final List<LatestTagCollector> everyTag = new ArrayList<>();
+    private final Map<String, LatestTagCollector> byFilter = new LinkedHashMap<>();
+
+    // Adds a filter, starting from a tag already known to be its biggest match, if any.
+    void add(String filter, Pattern pattern, String latest) {
+        add(filter, filter, pattern, TagOrder.NATURAL, latest);
+    }
+
+    // The same filter may be added under different keys with different orderings.
+    void add(String key, String filter, Pattern pattern, TagOrder order, String latest) {
+        if (byFilter.containsKey(key)) {
+            return;
+        }
+        FilterPrefix prefix = FilterPrefix.of(filter);
+        LatestTagCollector collector;
+        if (".*".equals(filter) || "^.*".equals(filter)) {
+            collector = new LatestTagCollector(null, order, latest);
+            everyTag.add(collector);
+        } else if (prefix == null) {
+            collector = new LatestTagCollector(pattern, order, latest);
+            everyTag.add(collector);
+        } else {
+            collector = new LatestTagCollector(prefix.isComplete() ? null : pattern, order, latest);
+            Node node = root;
+            String text = prefix.getPrefix();
+            for (int i = 0; i < text.length(); i++) {
+                node = node.addChild(text.charAt(i));
+            }
+            node.collectors.add(collector);
+        }
+        byFilter.put(key, collector);
+    }
+
+    boolean isEmpty() {
+        return byFilter.isEmpty();
+    }
+
+    @Override
+    public void accept(String tag) {
+        if (tag == null) {
+            return;
+        }
+        for (int i = 0; i < everyTag.size(); i++) {
+            everyTag.get(i).accept(tag);
+        }
+        Node node = root;
+        for (int depth = 0; depth < tag.length(); depth++) {
+            node = node.child(tag.charAt(depth));
+            if (node == null) {
+                return;
+            }
+            List<LatestTagCollector> collectors = node.collectors;
+            for (int i = 0; i < collectors.size(); i++) {
+                collectors.get(i).accept(tag);
+            }
+        }
+    }
+
+    // The latest tag of each filter by its key, null if nothing matched.
+    void forEachLatest(BiConsumer<String, String> consumer) {
+        byFilter.forEach((key, collector) -> consumer.accept(key, collector.getLatest()));
+    }
+}
@@ -0,0 +1,82 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+// Reads what we need from image manifests, manifest lists and image config
+// blobs. See https://docs.docker.com/registry/spec/manifest-v2-2/ and
+// https://github.com/opencontainers/image-spec
+final class ImageManifests {
+
+    private static final String DEFAULT_OS = "linux";
+    private static final String DEFAULT_ARCHITECTURE = "amd64";
+
+    private ImageManifests() {
+    }
+
+    static JsonObject parse(String json) {
+        try {
+            JsonElement element = new JsonParser().parse(json);
+            return element.isJsonObject() ? element.getAsJsonObject() : null;
+        } catch (JsonSyntaxException e) {
+            return null;
+        }
+    }
+
+    // Manifest lists and OCI indexes point at one manifest per platform.
+    static boolean isIndex(JsonObject manifest) {
+        return manifest.has("manifests") && manifest.get("manifests").isJsonArray();
+    }
+
+    // The digest of the linux/amd64 manifest in an index, or of the first one if there is none.
+    static String platformManifestDigest(JsonObject index) {
+        JsonArray manifests = index.getAsJsonArray("manifests");
+        String first = null;
+        for (JsonElement element : manifests) {
+            if (!element.isJsonObject()) {
+                continue;
+            }
+            JsonObject manifest = element.getAsJsonObject();
+            String digest = string(manifest, "digest");
+            if (first == null) {
+                first = digest;
+            }
+            JsonElement platform = manifest.get("platform");
+            if (platform != null && platform.isJsonObject()
+                    && DEFAULT_OS.equals(string(platform.getAsJsonObject(), "os"))
+                    && DEFAULT_ARCHITECTURE.equals(string(platform.getAsJsonObject(), "architecture"))) {
+                return digest;
+            }
+        }
+        return first;
+    }
+
+    static String configDigest(JsonObject manifest) {
+        JsonElement config = manifest.get("config");
+        return config != null && config.isJsonObject() ? string(config.getAsJsonObject(), "digest") : null;
+    }
+
+    static Date created(JsonObject config) {
+        String created = string(config, "created");
+        if (created == null) {
+            return null;
+        }
+        try {
+            return Date.from(OffsetDateTime.parse(created).toInstant());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String string(JsonObject object, String member) {
+        JsonElement element = object.get(member);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+}
@@ -1,18 +1,116 @@
 package se.thinkware.gocd.dockerpoller;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import se.thinkware.gocd.dockerpoller.message.LatestPackageRevisionMessage;
+import se.thinkware.gocd.dockerpoller.message.LatestPackageRevisionSinceMessage;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
+import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
 
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Gson instances are thread safe, so they are built once. The messages on
+// the request path have hand written type adapters, which saves Gson from
+// reflecting over their fields.
 class JsonUtil {
 
+    private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    private static final Gson toJson = gsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+    private static final Gson fromJson = gsonBuilder().create();
+
+    private static GsonBuilder gsonBuilder() {
+        TypeAdapter<Date> dates = new DateAdapter().nullSafe();
+        TypeAdapter<Map<String, PackageMaterialProperty>> properties = new PropertiesAdapter().nullSafe();
+        TypeAdapter<PackageRevisionMessage> revisions = new PackageRevisionMessage.JsonAdapter(dates).nullSafe();
+        return new GsonBuilder()
+                .registerTypeAdapter(Date.class, dates)
+                .registerTypeAdapter(PackageMaterialProperty.class, new PackageMaterialProperty.JsonAdapter().nullSafe())
+                .registerTypeAdapter(PackageRevisionMessage.class, revisions)
+                .registerTypeAdapter(LatestPackageRevisionMessage.class,
+                        new LatestPackageRevisionMessage.JsonAdapter(properties).nullSafe())
+                .registerTypeAdapter(LatestPackageRevisionSinceMessage.class,
+                        new LatestPackageRevisionSinceMessage.JsonAdapter(properties, revisions).nullSafe())
+                .registerTypeAdapter(DockerTagsList.class, new DockerTagsList.JsonAdapter().nullSafe());
+    }
+
     public static String toJsonString(Object object) {
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        return gsonBuilder.excludeFieldsWithoutExposeAnnotation().create().toJson(object);
+        return toJson.toJson(object);
     }
 
     public static <T> T fromJsonString(String json, Class<T> type) {
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        return gsonBuilder.create().fromJson(json, type);
+        return fromJson.fromJson(json, type);
+    }
+
+    // Same format and fallbacks as GsonBuilder.setDateFormat used to give us.
+    private static class DateAdapter extends TypeAdapter<Date> {
+
+        private final SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT, Locale.US);
+
+        @Override
+        public synchronized void write(JsonWriter out, Date date) throws IOException {
+            out.value(format.format(date));
+        }
+
+        @Override
+        public Date read(JsonReader in) throws IOException {
+            String date = in.nextString();
+            synchronized (this) {
+                try {
+                    return format.parse(date);
+                } catch (ParseException e) {
+                    // Try ISO 8601 below
+                }
+            }
+            try {
+                return Date.from(OffsetDateTime.parse(date).toInstant());
+            } catch (DateTimeParseException e) {
+                throw new JsonSyntaxException(date, e);
+            }
+        }
+    }
+
+    private static class PropertiesAdapter extends TypeAdapter<Map<String, PackageMaterialProperty>> {
+
+        private final TypeAdapter<PackageMaterialProperty> propertyAdapter = new PackageMaterialProperty.JsonAdapter().nullSafe();
+
+        @Override
+        public void write(JsonWriter out, Map<String, PackageMaterialProperty> properties) throws IOException {
+            out.beginObject();
+            for (Map.Entry<String, PackageMaterialProperty> property : properties.entrySet()) {
+                out.name(property.getKey());
+                propertyAdapter.write(out, property.getValue());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Map<String, PackageMaterialProperty> read(JsonReader in) throws IOException {
+            Map<String, PackageMaterialProperty> properties = new LinkedHashMap<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                String key = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                } else {
+                    properties.put(key, propertyAdapter.read(in));
+                }
+            }
+            in.endObject();
+            return properties;
+        }
     }
-}
\ No newline at end of file
+}
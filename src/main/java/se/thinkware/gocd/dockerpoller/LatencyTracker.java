@@ -0,0 +1,31 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.Arrays;
+
+// The response times of the last SAMPLES requests to a registry.
+class LatencyTracker {
+
+    static final int SAMPLES = 100;
+    static final int MIN_SAMPLES = 20;
+
+    private final long[] millis = new long[SAMPLES];
+    private int count;
+    private int next;
+
+    synchronized void record(long responseMillis) {
+        millis[next] = responseMillis;
+        next = (next + 1) % SAMPLES;
+        count = Math.min(count + 1, SAMPLES);
+    }
+
+    // The given percentile of the recorded times, or -1 until there are enough of them.
+    synchronized long percentile(int percent) {
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(millis, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+}
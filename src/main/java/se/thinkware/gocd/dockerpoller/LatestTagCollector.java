@@ -0,0 +1,44 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+// Keeps the biggest tag matching a filter. Tags are offered one at a time,
+// so only the current best is kept, whatever the size of the tag list.
+// Without a pattern every tag matches.
+//
+// The sort key of the best tag is kept with it, so each tag is parsed once.
+class LatestTagCollector implements Consumer<String> {
+
+    private final Pattern pattern;
+    private final TagOrder order;
+    private String latest;
+    private long[] latestKey;
+
+    LatestTagCollector(Pattern pattern) {
+        this(pattern, TagOrder.NATURAL, null);
+    }
+
+    // Starts from a tag already known to be the biggest match so far.
+    LatestTagCollector(Pattern pattern, TagOrder order, String latest) {
+        this.pattern = pattern;
+        this.order = order;
+        this.latestKey = latest == null ? null : order.key(latest);
+        this.latest = latestKey == null ? null : latest;
+    }
+
+    @Override
+    public void accept(String tag) {
+        if (tag != null && (pattern == null || pattern.matcher(tag).find())) {
+            long[] key = order.key(tag);
+            if (key != null && (latestKey == null || TagOrder.compare(key, latestKey) > 0)) {
+                latest = tag;
+                latestKey = key;
+            }
+        }
+    }
+
+    String getLatest() {
+        return latest;
+    }
+}
@@ -0,0 +1,36 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// A thread safe map of limited size that drops the least recently used entries first.
+class LruCache<K, V> {
+
+    private final Map<K, V> entries;
+
+    LruCache(int maxSize) {
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    synchronized void removeKeysIf(Predicate<K> predicate) {
+        entries.keySet().removeIf(predicate);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,145 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// A small HTTP endpoint that registries can send their notifications to,
+// so that pushed tags show up without waiting for the next poll. Point the
+// registry at http://<go server>:<port>/notifications
+//
+// With a secret, only requests whose Authorization header is exactly the
+// secret are accepted, others get a 401.
+class NotificationListener {
+
+    private static final Logger logger = Logger.getLoggerFor(NotificationListener.class);
+
+    static final String PATH = "/notifications";
+
+    // Notifications are small, anything bigger isn't one.
+    private static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Consumer<RegistryNotifications.Event> listener;
+    private final byte[] secret;
+
+    // No bind address means all interfaces, no secret means no Authorization check.
+    NotificationListener(
+            String bindAddress,
+            int port,
+            String secret,
+            Consumer<RegistryNotifications.Event> listener
+    ) throws IOException {
+        this.listener = listener;
+        this.secret = secret == null ? null : secret.getBytes(StandardCharsets.UTF_8);
+        InetSocketAddress address = bindAddress == null ? new InetSocketAddress(port) : new InetSocketAddress(bindAddress, port);
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newSingleThreadExecutor(RevisionPrefetcher.daemonThreads("docker-poller-notifications"));
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    // The listener configured by system property, or null if there is none.
+    static NotificationListener fromSystemProperties(Consumer<RegistryNotifications.Event> listener) {
+        Integer port = Integer.getInteger(Constants.NOTIFICATION_PORT_PROPERTY);
+        if (port == null) {
+            return null;
+        }
+        String bindAddress = System.getProperty(Constants.NOTIFICATION_ADDRESS_PROPERTY);
+        String secret = System.getProperty(Constants.NOTIFICATION_SECRET_PROPERTY);
+        if (secret != null && secret.isEmpty()) {
+            secret = null;
+        }
+        try {
+            NotificationListener notificationListener = new NotificationListener(bindAddress, port, secret, listener);
+            logger.info(String.format("Listening for registry notifications on %s", notificationListener.server.getAddress()));
+            if (secret == null) {
+                logger.warn(String.format("Registry notifications are accepted without authorization, set %s to require it",
+                        Constants.NOTIFICATION_SECRET_PROPERTY));
+            }
+            return notificationListener;
+        } catch (IOException e) {
+            logger.error(String.format("Could not listen for registry notifications on port %d: %s", port, e.getMessage()));
+            return null;
+        }
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!authorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                logger.warn(String.format("Ignoring unauthorized notification from %s", exchange.getRemoteAddress()));
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            String body = readBody(exchange.getRequestBody());
+            List<RegistryNotifications.Event> events = body == null ? null : RegistryNotifications.parse(body);
+            if (events == null) {
+                logger.warn(String.format("Ignoring unexpected notification from %s", exchange.getRemoteAddress()));
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            for (RegistryNotifications.Event event : events) {
+                logger.debug(String.format("Registry notification: %s", event));
+                try {
+                    listener.accept(event);
+                } catch (RuntimeException e) {
+                    logger.warn(String.format("Could not handle notification %s: %s", event, e.getMessage()));
+                }
+            }
+            // Anything but a 2xx makes the registry send it again.
+            exchange.sendResponseHeaders(200, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Compares in constant time, so that the secret can't be guessed from
+    // how long a rejection takes.
+    private boolean authorized(String authorization) {
+        if (secret == null) {
+            return true;
+        }
+        return authorization != null
+                && MessageDigest.isEqual(secret, authorization.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (body.size() + read > MAX_BODY_SIZE) {
+                return null;
+            }
+            body.write(buffer, 0, read);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -25,6 +25,30 @@ class PackageRepositoryConfigurationProvider {
                         .withPartOfIdentity(true)
                         .withRequired(true)
         );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_MAX_CONNECTIONS,
+                new PackageMaterialProperty()
+                        .withDisplayName("Max Connections to Docker Registry")
+                        .withDisplayOrder("2")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_TAGS_PAGE_SIZE,
+                new PackageMaterialProperty()
+                        .withDisplayName("Docker Tags per Page")
+                        .withDisplayOrder("3")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
+        repositoryConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_MAX_REQUESTS_PER_MINUTE,
+                new PackageMaterialProperty()
+                        .withDisplayName("Max Requests per Minute to Docker Registry")
+                        .withDisplayOrder("4")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
         return repositoryConfigurationResponse;
     }
 
@@ -46,6 +70,14 @@ class PackageRepositoryConfigurationProvider {
                         .withPartOfIdentity(true)
                         .withRequired(false)
         );
+        packageConfigurationResponse.addPackageMaterialProperty(
+                Constants.DOCKER_TAG_ORDER,
+                new PackageMaterialProperty()
+                        .withDisplayName("Docker Tag Ordering")
+                        .withDisplayOrder("2")
+                        .withPartOfIdentity(false)
+                        .withRequired(false)
+        );
         return packageConfigurationResponse;
     }
 
@@ -67,10 +99,47 @@ class PackageRepositoryConfigurationProvider {
             );
             return validationResultMessage;
         }
+        validatePositiveInteger(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_MAX_CONNECTIONS);
+        validatePositiveInteger(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_TAGS_PAGE_SIZE);
+        validatePositiveInteger(validationResultMessage, configurationProvidedByUser, Constants.DOCKER_MAX_REQUESTS_PER_MINUTE);
         return validationResultMessage;
 
     }
 
+    private void validatePositiveInteger(
+            ValidationResultMessage validationResultMessage,
+            PackageMaterialProperties configurationProvidedByUser,
+            String key
+    ) {
+        PackageMaterialProperty property = configurationProvidedByUser.getProperty(key);
+        if (property == null || property.value() == null || property.value().trim().isEmpty()) {
+            return;
+        }
+        try {
+            if (Integer.parseInt(property.value().trim()) > 0) {
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        validationResultMessage.addError(
+                ValidationError.create(key, String.format("'%s' is not a positive number", property.value()))
+        );
+    }
+
+    static int positiveIntegerOrDefault(PackageMaterialProperties configuration, String key, int defaultValue) {
+        PackageMaterialProperty property = configuration.getProperty(key);
+        if (property == null || property.value() == null) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt(property.value().trim());
+            return value > 0 ? value : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     public ValidationResultMessage validatePackageConfiguration(PackageMaterialProperties configurationProvidedByUser) {
         ValidationResultMessage validationResultMessage = new ValidationResultMessage();
         PackageMaterialProperty imageConfig = configurationProvidedByUser.getProperty(Constants.DOCKER_IMAGE);
@@ -87,6 +156,13 @@ class PackageRepositoryConfigurationProvider {
             validationResultMessage.addError(ValidationError.create(Constants.DOCKER_IMAGE, "Docker image is empty"));
             return validationResultMessage;
         }
+        PackageMaterialProperty orderConfig = configurationProvidedByUser.getProperty(Constants.DOCKER_TAG_ORDER);
+        if (orderConfig != null && TagOrder.fromPropertyValue(orderConfig.value()) == null) {
+            validationResultMessage.addError(ValidationError.create(
+                    Constants.DOCKER_TAG_ORDER,
+                    String.format("'%s' is not one of natural, semver, date, numeric or lexicographic", orderConfig.value())
+            ));
+        }
         return validationResultMessage;
     }
 
@@ -5,25 +5,40 @@ import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpHeaders;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.google.api.client.http.HttpMediaType;
+import com.google.api.client.http.HttpMethods;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.MalformedJsonException;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 import se.thinkware.gocd.dockerpoller.message.CheckConnectionResultMessage;
 import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperties;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
 import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
 import se.thinkware.gocd.dockerpoller.message.ValidationResultMessage;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
-import java.util.stream.Collectors;
 
 import static se.thinkware.gocd.dockerpoller.JsonUtil.fromJsonString;
 
@@ -31,91 +46,312 @@ class PackageRepositoryPoller {
 
     private static final Logger logger = Logger.getLoggerFor(PackageRepositoryPoller.class);
 
+    private static final String MANIFEST_TYPES = String.join(", ",
+            "application/vnd.docker.distribution.manifest.v2+json",
+            "application/vnd.docker.distribution.manifest.list.v2+json",
+            "application/vnd.oci.image.manifest.v1+json",
+            "application/vnd.oci.image.index.v1+json"
+    );
+
+    static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 10;
+    static final int DEFAULT_READ_TIMEOUT_SECONDS = 20;
+    static final int DEFAULT_REQUEST_DEADLINE_SECONDS = 30;
+
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"?next\"?");
+
     private final PackageRepositoryConfigurationProvider configurationProvider;
 
-    private final HttpTransport transport;
+    private final HttpRequestFactory requestFactory;
+
+    private final RegistryConnectionPool connectionPool;
+
+    private final TokenCache tokenCache = new TokenCache();
+
+    private final Map<String, AuthChallenge> challenges = new ConcurrentHashMap<>();
+
+    private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+    private final RegistrySettings registrySettings = new RegistrySettings();
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private final TagListCache tagListCache;
+
+    private final PatternCache patternCache = new PatternCache();
+
+    private final SingleFlight<String, FetchedTags> tagListFlights = new SingleFlight<>();
+
+    private final TagSetTracker tagSets = new TagSetTracker();
+
+    // Registries that were seen to return tag lists out of order, which
+    // rules out starting at the filter's prefix.
+    private final Set<String> unsortedRegistries = ConcurrentHashMap.newKeySet();
+
+    // Manifests and config blobs are content addressed, so their creation
+    // time can be kept as long as there is room for it. So can the lack of
+    // one, as NO_CREATION_TIME.
+    private final LruCache<String, Date> createdByDigest = new LruCache<>(10000);
+
+    private static final Date NO_CREATION_TIME = new Date(Long.MIN_VALUE);
+
+    // The last revision built for each tag list and filter, to answer with
+    // while the registry's circuit breaker or rate limit keeps us from
+    // asking for the digest and creation time of its tag.
+    private final LruCache<String, PackageRevisionMessage> revisions = new LruCache<>(10000);
+
+    private final RevisionPrefetcher prefetcher;
+
+    private final NotificationListener notificationListener;
+
+    private final Duration connectTimeout =
+            Duration.ofSeconds(Integer.getInteger(Constants.CONNECT_TIMEOUT_PROPERTY, DEFAULT_CONNECT_TIMEOUT_SECONDS));
+
+    private final Duration readTimeout =
+            Duration.ofSeconds(Integer.getInteger(Constants.READ_TIMEOUT_PROPERTY, DEFAULT_READ_TIMEOUT_SECONDS));
+
+    private Duration requestDeadline =
+            Duration.ofSeconds(Integer.getInteger(Constants.REQUEST_DEADLINE_PROPERTY, DEFAULT_REQUEST_DEADLINE_SECONDS));
+
+    private RequestHedger hedger;
 
     public PackageRepositoryPoller(PackageRepositoryConfigurationProvider configurationProvider) {
         logger.debug("Instantiated PackageRepositoryPoller");
         this.configurationProvider = configurationProvider;
-        this.transport = new NetHttpTransport();
+        this.connectionPool = new RegistryConnectionPool();
+        this.requestFactory = connectionPool.getTransport().createRequestFactory();
+        this.tagListCache = new TagListCache(TagSnapshotStore.fromSystemProperties());
+        this.tagListCache.saveOnShutdown();
+        this.notificationListener = NotificationListener.fromSystemProperties(this::imageChanged);
+        this.prefetcher = RevisionPrefetcher.fromSystemProperties(this::fetchLatestRevision, notificationListener != null);
+        this.hedger = RequestHedger.fromSystemProperties();
     }
 
     // This is used for testing, so that we can mock the HttpTransport
     public PackageRepositoryPoller(
             PackageRepositoryConfigurationProvider configurationProvider,
             HttpTransport transport
+    ) {
+        this(configurationProvider, transport, new TagListCache());
+    }
+
+    PackageRepositoryPoller(
+            PackageRepositoryConfigurationProvider configurationProvider,
+            HttpTransport transport,
+            TagListCache tagListCache
     ) {
         this.configurationProvider = configurationProvider;
-        this.transport = transport;
+        this.connectionPool = new RegistryConnectionPool(
+                transport,
+                RegistryConnectionPool.DEFAULT_MAX_CONNECTIONS,
+                RegistryConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_REGISTRY);
+        this.requestFactory = transport.createRequestFactory();
+        this.tagListCache = tagListCache;
+        this.prefetcher = null;
+        this.notificationListener = null;
+    }
+
+    // This is used for testing
+    void setRequestDeadline(Duration requestDeadline) {
+        this.requestDeadline = requestDeadline;
+    }
+
+    // This is used for testing
+    void setHedger(RequestHedger hedger) {
+        this.hedger = hedger;
     }
     
+    private static String registryOf(GenericUrl url) {
+        return url.getScheme() + "://" + url.getHost() + ":" + url.getPort();
+    }
+
     private HttpResponse getUrl(GenericUrl url) throws IOException {
-        HttpRequest request = transport.createRequestFactory().buildGetRequest(url);
-        request.setThrowExceptionOnExecuteError(false);
-        HttpResponse response = request.execute();
+        return getUrl(url, null);
+    }
+
+    private HttpResponse getUrl(GenericUrl url, HttpHeaders requestHeaders) throws IOException {
+        return request(HttpMethods.GET, url, requestHeaders);
+    }
+
+    // Extra request headers may make the request conditional, in which case
+    // a 304 Not Modified response is returned to the caller as well.
+    private HttpResponse request(String method, GenericUrl url, HttpHeaders requestHeaders) throws IOException {
+        String registry = registryOf(url);
+        AuthChallenge known = challenges.get(registry);
+        if (known != null) {
+            // We've seen this registry ask for a token before, so skip the anonymous round trip.
+            AuthChallenge challenge = known.withScope(AuthChallenge.pullScopeFor(url.getRawPath()));
+            HttpResponse response = requestWithToken(method, url, requestHeaders, challenge);
+            if (accepted(response)) {
+                return response;
+            }
+            if (response.getStatusCode() != 401 && response.getStatusCode() != 403) {
+                throw new HttpResponseException(response);
+            }
+            logger.debug(String.format("Remembered challenge rejected by %s, rediscovering", registry));
+            response.ignore();
+            tokenCache.invalidate(challenge.getRealm(), challenge.getService(), challenge.getScope());
+            challenges.remove(registry, known);
+        }
+
+        HttpResponse response = execute(buildRequest(method, url, requestHeaders));
 
-        logger.debug(String.format("HTTP GET URL: %s %s", url.toString(), response.getStatusCode()));
-        if (response.isSuccessStatusCode()) {
+        logger.debug(String.format("HTTP %s URL: %s %s", method, url.toString(), response.getStatusCode()));
+        if (accepted(response)) {
             return response;
         } 
 
         if (response.getStatusCode() == 401) {
             String authenticate = response.getHeaders().getAuthenticate();
             logger.debug(String.format("WWW-Authenticate: %s", authenticate));
-            if (authenticate != null) {
-                String parts[] = authenticate.split(" ");
-                String authScheme = parts[0];
-                String tokenUrl = getParameterFromAuthenticate(parts[1], "realm");                
-                
-                String service = getParameterFromAuthenticate(parts[1], "service");
-                if(service != null) {
-                    tokenUrl += ("?service="+service);
-                    String scope = getParameterFromAuthenticate(parts[1], "scope");
-                    if(scope != null) {
-                        tokenUrl += ("&scope="+scope);
-                    }
+            AuthChallenge challenge = authenticate == null ? null : AuthChallenge.parse(authenticate);
+            if (challenge != null) {
+                response.ignore();
+                challenges.put(registry, challenge.withScope(null));
+
+                response = requestWithToken(method, url, requestHeaders, challenge);
+                if (response.getStatusCode() == 401) {
+                    // The cached token might have been revoked, try once more with a fresh one.
+                    response.ignore();
+                    tokenCache.invalidate(challenge.getRealm(), challenge.getService(), challenge.getScope());
+                    response = requestWithToken(method, url, requestHeaders, challenge);
+                }
+                if (accepted(response)) {
+                    return response;
                 }
-                logger.debug(String.format("Token URL: %s", tokenUrl));
-
-                String tokenResponse = transport
-                    .createRequestFactory()
-                    .buildGetRequest(new GenericUrl(tokenUrl))
-                    .execute()
-                    .parseAsString();
-
-                Map<String, String> tokenMap = new GsonBuilder().create().fromJson(
-                    tokenResponse, 
-                    new TypeToken<Map<String, String>>(){}.getType()
-                );
-
-                request = transport.createRequestFactory(req -> 
-                    req.getHeaders().setAuthorization(
-                        authScheme + " " + tokenMap.get("token")
-                    )
-                ).buildGetRequest(url);
-
-                return request.execute();
             }
         }
         
     	throw new HttpResponseException(response);
     }
 
-    private String getParameterFromAuthenticate(String authenticatePart, String parameter) {
-        Matcher matcher = Pattern
-            .compile(parameter + "=\"([^\"]+)\"", Pattern.CASE_INSENSITIVE)
-            .matcher(authenticatePart);
-        if(matcher.find()) {
-            return matcher.group(1);
+    private HttpRequest buildRequest(String method, GenericUrl url, HttpHeaders requestHeaders) throws IOException {
+        HttpRequest request = requestFactory.buildRequest(method, url, null);
+        if (requestHeaders != null) {
+            request.getHeaders().fromHttpHeaders(requestHeaders);
         }
-        return null;
+        request.setThrowExceptionOnExecuteError(false);
+        return request;
+    }
+
+    private RateLimiter rateLimiterFor(String registry) {
+        return rateLimiters.computeIfAbsent(registry, RateLimiter::new);
+    }
+
+    // Connect and read timeouts never reach past the Deadline of the plugin request.
+    private void applyTimeouts(HttpRequest request) throws DeadlineExceededException {
+        long remaining = Deadline.check(request.getRequestMethod() + " " + request.getUrl());
+        request.setConnectTimeout((int) Math.min(connectTimeout.toMillis(), remaining));
+        request.setReadTimeout((int) Math.min(readTimeout.toMillis(), remaining));
+    }
+
+    private HttpRequest copyOf(HttpRequest request) throws IOException {
+        HttpRequest copy = requestFactory.buildRequest(request.getRequestMethod(), request.getUrl(), request.getContent());
+        copy.getHeaders().fromHttpHeaders(request.getHeaders());
+        copy.setThrowExceptionOnExecuteError(false);
+        copy.setConnectTimeout(request.getConnectTimeout());
+        copy.setReadTimeout(request.getReadTimeout());
+        return copy;
+    }
+
+    // Sends the request when the registry's circuit breaker, rate limit and
+    // connection limit allow. The breaker is asked first, so that an open
+    // one fails right away instead of after waiting for the rate limiter. A
+    // 429 is retried once, as the rate limiter then knows how long to wait.
+    private HttpResponse execute(HttpRequest request) throws IOException {
+        String registry = registryOf(request.getUrl());
+        RateLimiter rateLimiter = rateLimiterFor(registry);
+        CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(registry, CircuitBreaker::forRegistry);
+        for (int attempt = 1; ; attempt++) {
+            circuitBreaker.beforeRequest();
+            try {
+                rateLimiter.acquire();
+                connectionPool.acquire(request.getUrl());
+            } catch (IOException e) {
+                circuitBreaker.notSent();
+                throw e;
+            }
+            HttpResponse response;
+            try {
+                applyTimeouts(request);
+            } catch (IOException e) {
+                connectionPool.release(request.getUrl());
+                circuitBreaker.notSent();
+                throw e;
+            }
+            try {
+                if (hedger == null) {
+                    response = request.execute();
+                } else {
+                    response = hedger.execute(registry, request, () -> copyOf(request), rateLimiter::tryAcquire);
+                }
+            } catch (IOException | RuntimeException e) {
+                circuitBreaker.failed();
+                throw e;
+            } finally {
+                connectionPool.release(request.getUrl());
+            }
+            if (response.getStatusCode() >= 500) {
+                circuitBreaker.failed();
+            } else {
+                circuitBreaker.succeeded();
+            }
+            rateLimiter.update(response.getStatusCode(), response.getHeaders());
+            if (response.getStatusCode() != 429) {
+                return response;
+            }
+            response.ignore();
+            if (attempt == 2) {
+                throw new RateLimitedException(String.format("Too many requests to %s", registry));
+            }
+        }
+    }
+
+    private static boolean accepted(HttpResponse response) {
+        return response.isSuccessStatusCode() || response.getStatusCode() == 304;
+    }
+
+    private HttpResponse requestWithToken(
+            String method, GenericUrl url, HttpHeaders requestHeaders, AuthChallenge challenge
+    ) throws IOException {
+        String token = tokenCache.getToken(
+                challenge.getRealm(),
+                challenge.getService(),
+                challenge.getScope(),
+                () -> fetchToken(challenge)
+        );
+        HttpRequest request = buildRequest(method, url, requestHeaders);
+        request.getHeaders().setAuthorization(challenge.getScheme() + " " + token);
+        HttpResponse response = execute(request);
+        logger.debug(String.format("HTTP %s URL with token: %s %s", method, url.toString(), response.getStatusCode()));
+        return response;
+    }
+
+    private TokenResponse fetchToken(AuthChallenge challenge) throws IOException {
+        String tokenUrl = challenge.getRealm();
+        if(challenge.getService() != null) {
+            tokenUrl += ("?service="+challenge.getService());
+            if(challenge.getScope() != null) {
+                tokenUrl += ("&scope="+challenge.getScope());
+            }
+        }
+        logger.debug(String.format("Token URL: %s", tokenUrl));
+
+        // The token realm gets its own circuit breaker and rate limiter, like any registry.
+        HttpResponse response = execute(buildRequest(HttpMethods.GET, new GenericUrl(tokenUrl), null));
+        if (!response.isSuccessStatusCode()) {
+            throw new HttpResponseException(response);
+        }
+        String tokenResponse = response.parseAsString();
+
+        return fromJsonString(tokenResponse, TokenResponse.class);
     }
 
     private CheckConnectionResultMessage checkUrl(GenericUrl url, String what) {
         logger.debug(String.format("Checking URL: %s", url.toString()));
         try {
             HttpResponse response = getUrl(url);
+            // Only the headers are of interest, let the connection go back to the pool.
+            response.ignore();
             HttpHeaders headers = response.getHeaders();
             String dockerHeader = "docker-distribution-api-version";
             String message;
@@ -150,18 +386,134 @@ class PackageRepositoryPoller {
     }
 
     List<String> fetchTags(GenericUrl url) {
+        List<String> tags = new ArrayList<>();
         try {
-            logger.debug(String.format("Fetch tags for %s", url.toString()));
-            String tagResponse = getUrl(url).parseAsString();          
-            DockerTagsList tagsList = fromJsonString(tagResponse, DockerTagsList.class);
-            logger.debug(String.format("Got tags: %s", tagsList.getTags().toString()));
-            return tagsList.getTags();
+            forEachTag(url, null, tags::add);
+            return tags;
         } catch (IOException ex) {
             logger.warn("Got no tags!");
             return Collections.emptyList();
         }
     }
 
+    // Feeds every tag of the image to the consumer, following the Link
+    // header through all pages of the tag list as they arrive.
+    //
+    // If a previous cache entry is given, the first page is requested
+    // conditionally and that same entry is returned if the registry says it's
+    // unchanged; no tags are fed to the consumer then. Otherwise the
+    // validators of a single page tag list are returned, or null if there
+    // are none. A 304 for the first of several pages tells us nothing about
+    // the others, so paginated tag lists are never cached.
+    TagListCache.Entry forEachTag(
+            GenericUrl url,
+            TagListCache.Entry previous,
+            Consumer<String> consumer
+    ) throws IOException {
+        return forEachTag(url, previous, consumer, () -> false);
+    }
+
+    // Like the above, but stops following the Link header when done says so.
+    TagListCache.Entry forEachTag(
+            GenericUrl url,
+            TagListCache.Entry previous,
+            Consumer<String> consumer,
+            BooleanSupplier done
+    ) throws IOException {
+        Set<String> fetched = new HashSet<>();
+        TagListCache.Entry current = null;
+        GenericUrl pageUrl = url;
+        while (pageUrl != null && fetched.add(pageUrl.build())) {
+            logger.debug(String.format("Fetch tags for %s", pageUrl.toString()));
+            boolean firstPage = fetched.size() == 1;
+            HttpHeaders conditions = firstPage && previous != null ? previous.conditionalHeaders() : null;
+            HttpResponse response = getUrl(pageUrl, conditions);
+            if (response.getStatusCode() == 304) {
+                response.ignore();
+                logger.debug(String.format("Tags for %s not modified", pageUrl.toString()));
+                return previous;
+            }
+            String next = nextPageLink(response.getHeaders());
+            current = firstPage && next == null ? TagListCache.Entry.fromResponse(response.getHeaders()) : null;
+            int count;
+            try (Reader content = new InputStreamReader(response.getContent(), charsetOf(response))) {
+                count = DockerTagsList.forEachTag(content, consumer);
+            } catch (IllegalStateException | MalformedJsonException e) {
+                throw new IOException(String.format("Unexpected tag list from %s: %s", pageUrl, e.getMessage()), e);
+            }
+            logger.debug(String.format("Got %d tags", count));
+            if (count == 0 || done.getAsBoolean()) {
+                break;
+            }
+            pageUrl = next == null ? null : new GenericUrl(new URL(pageUrl.toURL(), next));
+        }
+        return current;
+    }
+
+    static class FetchedTags {
+        final boolean notModified;
+        final TagListCache.Entry validators;
+        final boolean outOfOrder;
+
+        FetchedTags(boolean notModified, TagListCache.Entry validators, boolean outOfOrder) {
+            this.notModified = notModified;
+            this.validators = validators;
+            this.outOfOrder = outOfOrder;
+        }
+    }
+
+    // Materials for the same image are often polled at the same time, e.g.
+    // with different tag filters. They share one fetch of the tag list, which
+    // updates the image's tags in the TagSetTracker for all of them. The tags
+    // go into a TagIndex as they are parsed, only the outcome is shared.
+    //
+    // With a prefix, the url should start at the prefix's range, and the
+    // fetch stops at the first page that goes beyond it, or that shows that
+    // the tags aren't sorted after all.
+    FetchedTags fetchTagsOnce(GenericUrl url, TagListCache.Entry previous, FilterPrefix prefix) throws IOException {
+        String image = url.build();
+        String key = (previous == null ? "GET " : "conditional GET ") + image;
+        return tagListFlights.run(key, () -> {
+            TagIndex.Builder tags = new TagIndex.Builder();
+            PrefixRange range = prefix == null ? null : new PrefixRange(prefix.getPrefix());
+            Consumer<String> consumer = range == null ? tags : tag -> {
+                tags.accept(tag);
+                range.accept(tag);
+            };
+            TagListCache.Entry validators = forEachTag(url, previous, consumer, () -> range != null && (range.isPast() || range.isOutOfOrder()));
+            boolean notModified = previous != null && validators == previous;
+            boolean outOfOrder = range != null && range.isOutOfOrder();
+            if (!notModified && !outOfOrder) {
+                TagIndex index = tagSets.update(image, tags.build());
+                if (validators != null) {
+                    validators.setTags(index);
+                }
+            }
+            return new FetchedTags(notModified, validators, outOfOrder);
+        });
+    }
+
+    // JSON is UTF-8 unless the registry says otherwise.
+    private static Charset charsetOf(HttpResponse response) {
+        HttpMediaType mediaType = response.getMediaType();
+        if (mediaType != null && mediaType.getCharsetParameter() != null) {
+            return mediaType.getCharsetParameter();
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    // Link: </v2/name/tags/list?n=100&last=x>; rel="next"
+    static String nextPageLink(HttpHeaders headers) {
+        List<String> links = headers.getHeaderStringValues("link");
+        for (String link : links) {
+            Matcher matcher = NEXT_LINK.matcher(link);
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+        return null;
+    }
+
     public CheckConnectionResultMessage checkConnectionToRepository(
             PackageMaterialProperties repositoryConfiguration
     ) {
@@ -171,16 +523,59 @@ class PackageRepositoryPoller {
             return new CheckConnectionResultMessage(CheckConnectionResultMessage.STATUS.FAILURE, validationResultMessage.getMessages());
         }
         String dockerRegistryUrl = repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value();
-        return checkUrl(new GenericUrl(dockerRegistryUrl), "registry");
+        configureRegistry(repositoryConfiguration);
+        GenericUrl url = new GenericUrl(dockerRegistryUrl);
+        CheckConnectionResultMessage result = Deadline.within(requestDeadline, () -> checkUrl(url, "registry"));
+        return withCircuitBreakerState(result, url);
+    }
+
+    // Adds the state of the registry's circuit breaker to the check when it
+    // isn't closed, so that it can be seen from GoCD and not only in the log.
+    private CheckConnectionResultMessage withCircuitBreakerState(CheckConnectionResultMessage result, GenericUrl url) {
+        String registry = registryOf(url);
+        CircuitBreaker circuitBreaker = circuitBreakers.get(registry);
+        CircuitBreaker.State state = circuitBreaker == null ? CircuitBreaker.State.CLOSED : circuitBreaker.getState();
+        if (state == CircuitBreaker.State.CLOSED) {
+            return result;
+        }
+        List<String> messages = new ArrayList<>(result.getMessages());
+        String host = url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort();
+        messages.add(state == CircuitBreaker.State.HALF_OPEN
+                ? String.format("Circuit breaker for %s is %s, a trial request is allowed.", host, state)
+                : String.format("Circuit breaker for %s is %s.", host, state));
+        return new CheckConnectionResultMessage(
+                result.success() ? CheckConnectionResultMessage.STATUS.SUCCESS : CheckConnectionResultMessage.STATUS.FAILURE,
+                messages);
     }
 
     public CheckConnectionResultMessage checkConnectionToPackage(
             PackageMaterialProperties packageConfiguration,
             PackageMaterialProperties repositoryConfiguration
     ) {
+        configureRegistry(repositoryConfiguration);
         String dockerPackageUrl =
                 getDockerPackageUrl(packageConfiguration, repositoryConfiguration);
-        return checkUrl(new GenericUrl(dockerPackageUrl), "image");
+        return Deadline.within(requestDeadline, () -> checkUrl(new GenericUrl(dockerPackageUrl), "image"));
+    }
+
+    // Applies the limits of the repository to its registry. This is done
+    // once per plugin request, before any request to the registry is sent.
+    private void configureRegistry(PackageMaterialProperties repositoryConfiguration) {
+        String dockerRegistryUrl = repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value();
+        PackageMaterialProperty registryName = repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_NAME);
+        String repository = registryName == null ? dockerRegistryUrl : registryName.value();
+        GenericUrl url = new GenericUrl(dockerRegistryUrl);
+        String registry = registryOf(url);
+        RegistrySettings.Limits limits = registrySettings.update(registry, repository, new RegistrySettings.Limits(
+                PackageRepositoryConfigurationProvider.positiveIntegerOrDefault(
+                        repositoryConfiguration, Constants.DOCKER_MAX_CONNECTIONS, 0),
+                PackageRepositoryConfigurationProvider.positiveIntegerOrDefault(
+                        repositoryConfiguration, Constants.DOCKER_MAX_REQUESTS_PER_MINUTE, 0)));
+        if (limits == null) {
+            return;
+        }
+        connectionPool.setMaxConnections(url, limits.maxConnections);
+        rateLimiterFor(registry).setRequestsPerMinute(limits.requestsPerMinute);
     }
 
     private String getDockerPackageUrl(
@@ -192,26 +587,121 @@ class PackageRepositoryPoller {
                 "/tags/list";
     }
 
-    static String expandNums(String versionString) {
-        Pattern p = Pattern.compile("[0-9]+");
-        Matcher m = p.matcher(versionString);
-        StringBuffer sb = new StringBuffer();
-        while (m.find()) {
-            String match = String.format("%06d", Integer.parseInt(m.group()));
+    private String getDockerBlobUrl(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            String digest
+    ) {
+        return repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value() +
+                packageConfiguration.getProperty(Constants.DOCKER_IMAGE).value() +
+                "/blobs/" + digest;
+    }
+
+    private String getDockerManifestUrl(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            String reference
+    ) {
+        return repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value() +
+                packageConfiguration.getProperty(Constants.DOCKER_IMAGE).value() +
+                "/manifests/" + reference;
+    }
+
+    // When the image with the given manifest digest was created, according
+    // to its config blob, or null if we can't tell. Throws if the registry's
+    // circuit breaker or rate limit doesn't let us ask.
+    Date getImageCreated(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            String manifestDigest
+    ) throws RegistryUnavailableException {
+        Date created = createdByDigest.get(manifestDigest);
+        if (created == null) {
+            created = fetchImageCreated(packageConfiguration, repositoryConfiguration, manifestDigest);
+        }
+        return created == NO_CREATION_TIME ? null : created;
+    }
+
+    // NO_CREATION_TIME when the image doesn't have one, or null when it
+    // couldn't be found out this time.
+    private Date fetchImageCreated(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            String manifestDigest
+    ) throws RegistryUnavailableException {
+        Date created;
+        try {
+            HttpHeaders accept = new HttpHeaders().setAccept(MANIFEST_TYPES);
+            String manifestUrl = getDockerManifestUrl(packageConfiguration, repositoryConfiguration, manifestDigest);
+            JsonObject manifest = ImageManifests.parse(getUrl(new GenericUrl(manifestUrl), accept).parseAsString());
+            if (manifest != null && ImageManifests.isIndex(manifest)) {
+                String platformDigest = ImageManifests.platformManifestDigest(manifest);
+                manifest = null;
+                if (platformDigest != null) {
+                    manifestUrl = getDockerManifestUrl(packageConfiguration, repositoryConfiguration, platformDigest);
+                    manifest = ImageManifests.parse(getUrl(new GenericUrl(manifestUrl), accept).parseAsString());
+                }
+            }
+            String configDigest = manifest == null ? null : ImageManifests.configDigest(manifest);
+            if (configDigest == null) {
+                logger.debug(String.format("No image config found for %s", manifestDigest));
+                created = NO_CREATION_TIME;
+            } else {
+                created = createdByDigest.get(configDigest);
+                if (created == null) {
+                    String blobUrl = getDockerBlobUrl(packageConfiguration, repositoryConfiguration, configDigest);
+                    JsonObject config = ImageManifests.parse(getUrl(new GenericUrl(blobUrl)).parseAsString());
+                    created = config == null ? null : ImageManifests.created(config);
+                    if (created == null) {
+                        logger.debug(String.format("No creation time in image config %s", configDigest));
+                        created = NO_CREATION_TIME;
+                    }
+                    createdByDigest.put(configDigest, created);
+                }
+            }
+        } catch (CircuitOpenException | RateLimitedException ex) {
+            throw ex;
+        } catch (HttpResponseException ex) {
+            logger.warn(String.format("Could not get creation time of %s: %s", manifestDigest, ex.getMessage()));
+            // A content addressed manifest or blob that isn't there won't
+            // show up later, anything else may work on the next poll.
+            if (ex.getStatusCode() != 404) {
+                return null;
+            }
+            created = NO_CREATION_TIME;
+        } catch (IOException ex) {
+            logger.warn(String.format("Could not get creation time of %s: %s", manifestDigest, ex.getMessage()));
+            return null;
+        }
+        createdByDigest.put(manifestDigest, created);
+        return created;
+    }
 
-            m.appendReplacement(sb, match);
+    // The digest of the tag's manifest, or null if the registry didn't tell.
+    // Throws if the registry's circuit breaker or rate limit doesn't let us ask.
+    String getManifestDigest(GenericUrl manifestUrl) throws RegistryUnavailableException {
+        try {
+            HttpHeaders accept = new HttpHeaders().setAccept(MANIFEST_TYPES);
+            HttpResponse response = request(HttpMethods.HEAD, manifestUrl, accept);
+            response.ignore();
+            String digest = response.getHeaders().getFirstHeaderStringValue("Docker-Content-Digest");
+            logger.debug(String.format("Manifest digest for %s is %s", manifestUrl, digest));
+            return digest;
+        } catch (CircuitOpenException | RateLimitedException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            logger.warn(String.format("Could not get manifest digest for %s: %s", manifestUrl, ex.getMessage()));
+            return null;
         }
-        m.appendTail(sb);
-        return sb.toString();
     }
 
-    private static String biggest(String first, String second) {
-        String firstComp = expandNums(first);
-        String secondComp = expandNums(second);
-        if (firstComp.compareTo(secondComp) > 0) {
-            return first;
-        } else {
-            return second;
+    // Called when the registry notifies us about a push or delete. A tag
+    // may have been moved to another image without changing the tag list,
+    // so the manifest digests we know for the image can't be trusted.
+    void imageChanged(RegistryNotifications.Event event) {
+        tagListCache.forgetDigests(event.getRegistry(), event.getRepository());
+        if (prefetcher != null) {
+            prefetcher.refreshImage(event.getRepository());
         }
     }
 
@@ -220,36 +710,171 @@ class PackageRepositoryPoller {
             PackageMaterialProperties repositoryConfiguration
     ) {
         logger.debug("getLatestRevision");
+        if (prefetcher != null) {
+            return prefetcher.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        }
+        return fetchLatestRevision(packageConfiguration, repositoryConfiguration);
+    }
+
+    // Asks the registry, unlike getLatestRevision which may answer from
+    // what the prefetcher got in the background.
+    PackageRevisionMessage fetchLatestRevision(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration
+    ) {
+        return Deadline.within(requestDeadline, () -> fetchLatestRevisionInTime(packageConfiguration, repositoryConfiguration));
+    }
+
+    private PackageRevisionMessage fetchLatestRevisionInTime(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration
+    ) {
+        configureRegistry(repositoryConfiguration);
         GenericUrl url = new GenericUrl(getDockerPackageUrl(packageConfiguration, repositoryConfiguration));
-        List<String> tags = fetchTags(url);
         String filter = packageConfiguration.getProperty(Constants.DOCKER_TAG_FILTER).value();
         if (filter.equals("")) {
             filter = ".*";
         }
 
+        Pattern pattern;
         try {
-            Pattern pattern = Pattern.compile(filter);
+            pattern = patternCache.compile(filter);
+        } catch (PatternSyntaxException e) {
+            String message = String.format("Invalid docker tag filter '%s' used for image '%s': %s", filter, url, e.getMessage());
+            logger.error(message);
+            throw new PatternSyntaxException(message, e.getPattern(), e.getIndex());
+        }
 
-            List<Object> matching = tags.stream().filter(pattern.asPredicate()).collect(Collectors.toList());
+        TagOrder order = TagOrder.of(packageConfiguration);
+        String filterKey = order.filterKey(filter);
 
-            if (matching.isEmpty()) {
-                logger.warn("Found no matching revision.");
-                return new PackageRevisionMessage();
+        FilterPrefix prefix = pageTagList(url, filter, repositoryConfiguration);
+        String cacheKey = url.build();
+        TagListCache.Entry stored = tagListCache.get(cacheKey);
+        if (stored != null && stored.getTags() != null) {
+            tagSets.seed(cacheKey, stored.getTags());
+        }
+        // A 304 is of no use unless we know the answer for this filter, or
+        // the tags to find it in.
+        TagListCache.Entry previous =
+                stored != null && (stored.getLatest(filterKey) != null || tagSets.contains(cacheKey)) ? stored : null;
+        String latest;
+        RegistryUnavailableException refused = null;
+        try {
+            FetchedTags fetched = fetchTagsOnce(url, previous, prefix);
+            if (fetched.outOfOrder) {
+                logger.warn(String.format("%s returned tags out of order, listing all tags from now on", registryOf(url)));
+                unsortedRegistries.add(registryOf(url));
+                return fetchLatestRevisionInTime(packageConfiguration, repositoryConfiguration);
             }
-
-            String latest = "";
-            for (Object tag: matching) {
-                latest = biggest(latest, tag.toString());
+            if (fetched.notModified) {
+                latest = previous.getLatest(filterKey);
+                if (latest == null) {
+                    latest = tagSets.latest(cacheKey, filter, pattern, order);
+                    if (latest != null) {
+                        previous.putLatest(filterKey, latest);
+                    }
+                }
+            } else {
+                latest = tagSets.latest(cacheKey, filter, pattern, order);
+                if (fetched.validators != null) {
+                    // The other filters of the image are kept up to date
+                    // with the new tags too, so they can all use 304s.
+                    tagSets.forEachLatest(cacheKey, fetched.validators::putLatest);
+                    tagListCache.update(cacheKey, fetched.validators);
+                } else {
+                    tagListCache.remove(cacheKey);
+                }
+            }
+        } catch (RegistryUnavailableException ex) {
+            // The tags we got last time are better than none.
+            latest = tagSets.latest(cacheKey, filter, pattern, order);
+            logger.warn(String.format("%s, using the tags we already know: %s", ex.getMessage(), latest));
+            if (ex instanceof CircuitOpenException || ex instanceof RateLimitedException) {
+                refused = ex;
             }
+        } catch (IOException ex) {
+            logger.warn("Got no tags!");
+            latest = null;
+        }
 
-            logger.info(String.format("Latest revision is: %s", latest));
-            return new PackageRevisionMessage(latest, new Date(), "docker", null,null);
+        if (latest == null) {
+            logger.warn("Found no matching revision.");
+            return new PackageRevisionMessage();
+        }
 
-        } catch (PatternSyntaxException e) {
-            String message = String.format("Invalid docker tag filter '%s' used for image '%s': %s", filter, url, e.getMessage());
-            logger.error(message);
-            throw new PatternSyntaxException(message, e.getPattern(), e.getIndex());
+        logger.info(String.format("Latest revision is: %s", latest));
+        String revisionKey = cacheKey + '\0' + filterKey;
+        if (refused != null) {
+            return knownRevision(revisionKey, latest, refused);
+        }
+        PackageRevisionMessage revision;
+        try {
+            revision = revisionOf(packageConfiguration, repositoryConfiguration, cacheKey, latest);
+        } catch (RegistryUnavailableException ex) {
+            return knownRevision(revisionKey, latest, ex);
+        }
+        revisions.put(revisionKey, revision);
+        return revision;
+    }
+
+    // Adds the page size to the url of a tag list, and if the registry lists
+    // its tags sorted, the tag to start after. Returns the prefix the tags
+    // that can match start with then, or null.
+    private FilterPrefix pageTagList(GenericUrl url, String filter, PackageMaterialProperties repositoryConfiguration) {
+        int pageSize = PackageRepositoryConfigurationProvider.positiveIntegerOrDefault(
+                repositoryConfiguration, Constants.DOCKER_TAGS_PAGE_SIZE, 0);
+        if (pageSize <= 0) {
+            return null;
         }
+        url.set("n", pageSize);
+        // Paginated tag lists are sorted, so we can skip to the tags that can match.
+        FilterPrefix prefix = unsortedRegistries.contains(registryOf(url)) ? null : FilterPrefix.of(filter);
+        String last = prefix == null ? null : PrefixRange.lastBefore(prefix.getPrefix());
+        if (last == null) {
+            return null;
+        }
+        url.set("last", last);
+        return prefix;
+    }
+
+    private PackageRevisionMessage revisionOf(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration,
+            String cacheKey,
+            String tag
+    ) throws RegistryUnavailableException {
+        // As long as the tag list is unchanged we assume that the tags
+        // still point at the same manifests.
+        TagListCache.Entry validators = tagListCache.get(cacheKey);
+        String digest = validators == null ? null : validators.getDigest(tag);
+        if (digest == null) {
+            digest = getManifestDigest(
+                    new GenericUrl(getDockerManifestUrl(packageConfiguration, repositoryConfiguration, tag)));
+            if (digest != null && validators != null) {
+                validators.putDigest(tag, digest);
+            }
+        }
+        Date created = digest == null ? null : getImageCreated(packageConfiguration, repositoryConfiguration, digest);
+        PackageRevisionMessage revision = new PackageRevisionMessage(
+                tag, created == null ? new Date() : created, "docker", null,null);
+        if (digest != null) {
+            revision.addData(Constants.DIGEST_DATA_KEY, digest);
+        }
+        return revision;
+    }
+
+    // The revision we answered with before for the latest tag, when the
+    // registry won't let us ask about it now. Without one, a revision with
+    // no digest and the current time would look like a new image to GoCD,
+    // so this throws instead.
+    private PackageRevisionMessage knownRevision(String revisionKey, String latest, RegistryUnavailableException ex) {
+        PackageRevisionMessage known = revisions.get(revisionKey);
+        if (known == null || !latest.equals(known.getRevision())) {
+            throw new UncheckedIOException(ex.getMessage(), ex);
+        }
+        logger.warn(String.format("%s, answering with the revision we already know: %s", ex.getMessage(), latest));
+        return known;
     }
 
     public PackageRevisionMessage getLatestRevisionSince(
@@ -259,13 +884,46 @@ class PackageRepositoryPoller {
     ) {
         logger.debug(String.format("getLatestRevisionSince %s", previous.getRevision()));
         PackageRevisionMessage latest = getLatestRevision(packageConfiguration, repositoryConfiguration);
-        if (biggest(previous.getRevision(), latest.getRevision()).equals(latest.getRevision())) {
-            logger.info(String.format("Latest revision is: %s", latest));
+        if (latest.getRevision() == null) {
+            logger.warn("Found no matching revision.");
             return latest;
-        } else {
+        }
+        // A previous revision this ordering can't place, e.g. from before it
+        // was changed, is older than anything.
+        TagOrder order = TagOrder.of(packageConfiguration);
+        long[] previousKey = previous.getRevision() == null ? null : order.key(previous.getRevision());
+        long[] latestKey = order.key(latest.getRevision());
+        int cmp = previousKey == null || latestKey == null ? -1 : TagOrder.compare(previousKey, latestKey);
+        if (cmp > 0) {
             logger.warn("Found no matching revision.");
             return new PackageRevisionMessage();
         }
+        if (previousKey == null || cmp == 0) {
+            logger.info(String.format("Latest revision is: %s", latest));
+            return latest;
+        }
+        // The tags were brought up to date by getLatestRevision, so the one
+        // after the previous revision is a lookup in them.
+        String filter = packageConfiguration.getProperty(Constants.DOCKER_TAG_FILTER).value();
+        if (filter.equals("")) {
+            filter = ".*";
+        }
+        GenericUrl url = new GenericUrl(getDockerPackageUrl(packageConfiguration, repositoryConfiguration));
+        pageTagList(url, filter, repositoryConfiguration);
+        String cacheKey = url.build();
+        String next = tagSets.after(cacheKey, patternCache.compile(filter), order, previousKey);
+        if (next == null || next.equals(latest.getRevision())) {
+            logger.info(String.format("Latest revision is: %s", latest));
+            return latest;
+        }
+        logger.info(String.format("Next revision is: %s", next));
+        return Deadline.within(requestDeadline, () -> {
+            try {
+                return revisionOf(packageConfiguration, repositoryConfiguration, cacheKey, next);
+            } catch (RegistryUnavailableException ex) {
+                throw new UncheckedIOException(ex.getMessage(), ex);
+            }
+        });
     }
 
 }
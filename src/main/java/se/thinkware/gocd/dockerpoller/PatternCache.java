@@ -0,0 +1,42 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// Compiled tag filters, least recently used ones are dropped first. Invalid
+// filters are remembered too, so they fail without being compiled again.
+class PatternCache {
+
+    static final int DEFAULT_MAX_SIZE = 1000;
+
+    // Holds either a Pattern or the PatternSyntaxException compiling it gave.
+    private final LruCache<String, Object> patterns;
+
+    PatternCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    PatternCache(int maxSize) {
+        this.patterns = new LruCache<>(maxSize);
+    }
+
+    Pattern compile(String regex) {
+        Object compiled = patterns.get(regex);
+        if (compiled == null) {
+            try {
+                compiled = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                compiled = e;
+            }
+            patterns.put(regex, compiled);
+        }
+        if (compiled instanceof PatternSyntaxException) {
+            throw (PatternSyntaxException) compiled;
+        }
+        return (Pattern) compiled;
+    }
+
+    int size() {
+        return patterns.size();
+    }
+}
@@ -0,0 +1,53 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.function.Consumer;
+
+// Watches a tag list that was requested from the start of a prefix's range,
+// see lastBefore. Registries return paginated tag lists in lexical order, so
+// once a tag beyond the prefix has been seen, the remaining pages can't have
+// any tags with the prefix. Tags that are out of order show that the
+// registry doesn't sort, and that tags may have been missed.
+class PrefixRange implements Consumer<String> {
+
+    private final String prefix;
+    private String previous;
+    private boolean past;
+    private boolean outOfOrder;
+
+    PrefixRange(String prefix) {
+        this.prefix = prefix;
+    }
+
+    // A value for the last parameter of the tag list, right before the
+    // tags with the prefix, or null if there is none.
+    static String lastBefore(String prefix) {
+        int end = prefix.length() - 1;
+        char c = prefix.charAt(end);
+        if (c == 0) {
+            return end == 0 ? null : prefix.substring(0, end);
+        }
+        return prefix.substring(0, end) + (char) (c - 1);
+    }
+
+    @Override
+    public void accept(String tag) {
+        if (tag == null) {
+            return;
+        }
+        if (previous != null && tag.compareTo(previous) < 0) {
+            outOfOrder = true;
+        }
+        previous = tag;
+        if (!tag.startsWith(prefix) && tag.compareTo(prefix) > 0) {
+            past = true;
+        }
+    }
+
+    boolean isPast() {
+        return past;
+    }
+
+    boolean isOutOfOrder() {
+        return outOfOrder;
+    }
+}
@@ -0,0 +1,11 @@
+package se.thinkware.gocd.dockerpoller;
+
+// The registry asked us to slow down, and waiting for it would take too long.
+class RateLimitedException extends RegistryUnavailableException {
+
+    private static final long serialVersionUID = 1L;
+
+    RateLimitedException(String message) {
+        super(message);
+    }
+}
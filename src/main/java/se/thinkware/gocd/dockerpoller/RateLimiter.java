@@ -0,0 +1,173 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.HttpHeaders;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// Paces the requests to one registry. An optional token bucket allows a
+// configured number of requests per minute. On top of that the registry
+// can tell us to hold off, with Retry-After on a 429 or 503 response or
+// with RateLimit-Remaining: 0 and RateLimit-Reset on any response.
+//
+// Requests wait for their turn, but never longer than the max wait or past
+// their Deadline. Then a RateLimitedException is thrown instead, so that
+// the caller can fall back to what it already knows.
+class RateLimiter {
+
+    private static final Logger logger = Logger.getLoggerFor(RateLimiter.class);
+
+    static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(10);
+
+    // When a registry says 429 but not for how long.
+    static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(60);
+
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private final String registry;
+    private final Duration maxWait;
+    private final Clock clock;
+    private final Sleeper sleeper;
+
+    private int requestsPerMinute;
+    // May be negative, for requests that have been promised a later turn.
+    private double tokens;
+    private long refilledAt;
+    private long blockedUntil;
+
+    RateLimiter(String registry) {
+        this(registry, DEFAULT_MAX_WAIT, Clock.systemUTC(), Thread::sleep);
+    }
+
+    RateLimiter(String registry, Duration maxWait, Clock clock, Sleeper sleeper) {
+        this.registry = registry;
+        this.maxWait = maxWait;
+        this.clock = clock;
+        this.sleeper = sleeper;
+        this.refilledAt = clock.millis();
+    }
+
+    // Zero means no limit of our own.
+    synchronized void setRequestsPerMinute(int requestsPerMinute) {
+        if (requestsPerMinute != this.requestsPerMinute) {
+            this.requestsPerMinute = requestsPerMinute;
+            this.tokens = requestsPerMinute;
+            this.refilledAt = clock.millis();
+        }
+    }
+
+    // Waits until the next request may be sent.
+    void acquire() throws InterruptedIOException, RateLimitedException {
+        long wait = reserve();
+        if (wait <= 0) {
+            return;
+        }
+        logger.debug(String.format("Waiting %d ms before the next request to %s", wait, registry));
+        try {
+            sleeper.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while waiting for %s", registry));
+        }
+    }
+
+    // Like acquire, but only if the request may be sent right away.
+    synchronized boolean tryAcquire() {
+        if (waitMillis(clock.millis()) > 0) {
+            return false;
+        }
+        if (requestsPerMinute > 0) {
+            tokens--;
+        }
+        return true;
+    }
+
+    private synchronized long waitMillis(long now) {
+        long wait = Math.max(0, blockedUntil - now);
+        if (requestsPerMinute > 0) {
+            double perMilli = requestsPerMinute / 60_000.0;
+            tokens = Math.min(requestsPerMinute, tokens + (now - refilledAt) * perMilli);
+            refilledAt = now;
+            if (tokens < 1) {
+                wait = Math.max(wait, (long) Math.ceil((1 - tokens) / perMilli));
+            }
+        }
+        return wait;
+    }
+
+    private synchronized long reserve() throws RateLimitedException {
+        long now = clock.millis();
+        long wait = waitMillis(now);
+        if (wait > Math.min(maxWait.toMillis(), Deadline.remainingMillis())) {
+            throw new RateLimitedException(String.format(
+                    "Rate limited by %s for another %d seconds", registry, (wait + 999) / 1000));
+        }
+        if (requestsPerMinute > 0) {
+            tokens--;
+        }
+        return wait;
+    }
+
+    // Takes note of what the registry says about its limits.
+    void update(int statusCode, HttpHeaders headers) {
+        long now = clock.millis();
+        Duration holdOff = null;
+        if (statusCode == 429 || statusCode == 503) {
+            holdOff = retryAfter(headers.getFirstHeaderStringValue("Retry-After"), now);
+            if (holdOff == null && statusCode == 429) {
+                holdOff = DEFAULT_RETRY_AFTER;
+            }
+        }
+        Long remaining = leadingNumber(headers.getFirstHeaderStringValue("RateLimit-Remaining"));
+        Long reset = leadingNumber(headers.getFirstHeaderStringValue("RateLimit-Reset"));
+        if (holdOff == null && remaining != null && remaining == 0 && reset != null) {
+            holdOff = Duration.ofSeconds(reset);
+        }
+        if (holdOff != null) {
+            logger.info(String.format("%s asks us to hold off for %d seconds", registry, holdOff.getSeconds()));
+            synchronized (this) {
+                blockedUntil = Math.max(blockedUntil, now + holdOff.toMillis());
+            }
+        }
+    }
+
+    // Retry-After is either seconds or an HTTP date.
+    static Duration retryAfter(String value, long now) {
+        if (value == null) {
+            return null;
+        }
+        Long seconds = leadingNumber(value);
+        if (seconds != null) {
+            return Duration.ofSeconds(seconds);
+        }
+        try {
+            long at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Duration.ofMillis(Math.max(0, at - now));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // RateLimit-* values may have parameters, e.g. "100;w=21600" from Docker Hub.
+    static Long leadingNumber(String value) {
+        if (value == null) {
+            return null;
+        }
+        String number = value.trim();
+        int end = 0;
+        while (end < number.length() && Character.isDigit(number.charAt(end))) {
+            end++;
+        }
+        if (end == 0 || end > 18) {
+            return null;
+        }
+        return Long.parseLong(number.substring(0, end));
+    }
+}
@@ -0,0 +1,49 @@
+package se.thinkware.gocd.dockerpoller;
+
+// How long to wait before refreshing a material again. Every refresh that
+// finds nothing new doubles the delay, up to a cap, and a refresh that finds
+// a change brings it back to the base interval. For materials that have
+// changed more than once, the delay also stays below half the average time
+// between their changes, so that busy images are polled at their own pace.
+class RefreshBackoff {
+
+    // The weight of the latest time between changes in the running average.
+    private static final double CHANGE_WEIGHT = 0.25;
+
+    private final long baseMillis;
+    private final long maxMillis;
+    private int quietRefreshes;
+    private long lastChange = -1;
+    private long meanMillisBetweenChanges = -1;
+
+    RefreshBackoff(long baseMillis, long maxMillis) {
+        this.baseMillis = baseMillis;
+        this.maxMillis = Math.max(baseMillis, maxMillis);
+    }
+
+    synchronized void refreshed(boolean changed, long now) {
+        if (!changed) {
+            quietRefreshes++;
+            return;
+        }
+        quietRefreshes = 0;
+        if (lastChange >= 0) {
+            long sinceLast = now - lastChange;
+            meanMillisBetweenChanges = meanMillisBetweenChanges < 0
+                    ? sinceLast
+                    : (long) (CHANGE_WEIGHT * sinceLast + (1 - CHANGE_WEIGHT) * meanMillisBetweenChanges);
+        }
+        lastChange = now;
+    }
+
+    synchronized long delayMillis() {
+        long delay = baseMillis;
+        for (int i = 0; i < quietRefreshes && delay < maxMillis; i++) {
+            delay *= 2;
+        }
+        if (meanMillisBetweenChanges >= 0) {
+            delay = Math.min(delay, Math.max(baseMillis, meanMillisBetweenChanges / 2));
+        }
+        return Math.min(delay, maxMillis);
+    }
+}
@@ -0,0 +1,157 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The transport for all requests to docker registries and their token
+// servers, and how many of those requests may be sent at the same time.
+// Each registry host gets its own bound, so that one busy registry can't
+// starve the others.
+//
+// Connections are the JDK's HttpURLConnection ones, which are kept alive
+// between requests, up to the http.maxConnections system property idle ones
+// per host, and which come with SNI and the JDK's hostname verification.
+// They are opened through the RequestHedger, so that it can close those of
+// hedged requests that lost.
+class RegistryConnectionPool {
+
+    private static final Logger logger = Logger.getLoggerFor(RegistryConnectionPool.class);
+
+    static final int DEFAULT_MAX_CONNECTIONS = 100;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_REGISTRY = 10;
+
+    // A number of connections that can be changed while they are in use.
+    private static class Limit {
+        private int max;
+        private int inUse;
+
+        Limit(int max) {
+            this.max = max;
+        }
+
+        synchronized void setMax(int max) {
+            this.max = max;
+            notifyAll();
+        }
+
+        synchronized int getInUse() {
+            return inUse;
+        }
+
+        // False if no connection was free in time.
+        synchronized boolean acquire(long timeoutMillis) throws InterruptedIOException {
+            long end = System.nanoTime() + Math.min(timeoutMillis, Long.MAX_VALUE / 2_000_000) * 1_000_000;
+            try {
+                while (inUse >= max) {
+                    long left = (end - System.nanoTime()) / 1_000_000;
+                    if (left <= 0) {
+                        return false;
+                    }
+                    wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a connection");
+            }
+            inUse++;
+            return true;
+        }
+
+        synchronized void release() {
+            inUse--;
+            notifyAll();
+        }
+    }
+
+    private final HttpTransport transport;
+    private final int defaultMaxPerRegistry;
+    private final Limit total;
+    private final Map<String, Integer> maxPerRegistry = new ConcurrentHashMap<>();
+    private final Map<String, Limit> registries = new ConcurrentHashMap<>();
+
+    RegistryConnectionPool() {
+        this(
+                new NetHttpTransport.Builder().setConnectionFactory(RequestHedger.connectionFactory()).build(),
+                Integer.getInteger(Constants.MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS),
+                Integer.getInteger(Constants.MAX_CONNECTIONS_PER_REGISTRY_PROPERTY, DEFAULT_MAX_CONNECTIONS_PER_REGISTRY)
+        );
+    }
+
+    RegistryConnectionPool(HttpTransport transport, int maxConnections, int defaultMaxPerRegistry) {
+        this.transport = transport;
+        this.defaultMaxPerRegistry = defaultMaxPerRegistry;
+        this.total = new Limit(maxConnections);
+        logger.debug(String.format("Connection pool with %d connections, %d per registry", maxConnections, defaultMaxPerRegistry));
+    }
+
+    HttpTransport getTransport() {
+        return transport;
+    }
+
+    // Takes effect right away, requests over a lowered limit wait for the
+    // ones in flight to finish. Zero goes back to the default.
+    void setMaxConnections(GenericUrl registryUrl, int maxConnections) {
+        String key = key(registryUrl);
+        Integer previous = maxConnections > 0 ? maxPerRegistry.put(key, maxConnections) : maxPerRegistry.remove(key);
+        if (previous == null ? maxConnections > 0 : previous != maxConnections) {
+            logger.debug(String.format("Max %d connections to %s", maxFor(key), registryUrl.getHost()));
+            Limit limit = registries.get(key);
+            if (limit != null) {
+                limit.setMax(maxFor(key));
+            }
+        }
+    }
+
+    // Takes a connection to the registry of the url, waiting for one until
+    // the Deadline. It must be given back with release once the request has
+    // been sent and its response received.
+    void acquire(GenericUrl url) throws InterruptedIOException, DeadlineExceededException {
+        String key = key(url);
+        Limit registry = registries.computeIfAbsent(key, k -> new Limit(maxFor(k)));
+        if (!registry.acquire(Deadline.remainingMillis())) {
+            throw new DeadlineExceededException(String.format("Out of time waiting for a connection to %s", url.getHost()));
+        }
+        boolean acquired = false;
+        try {
+            acquired = total.acquire(Deadline.remainingMillis());
+        } finally {
+            if (!acquired) {
+                registry.release();
+            }
+        }
+        if (!acquired) {
+            throw new DeadlineExceededException(String.format("Out of time waiting for a connection to %s", url.getHost()));
+        }
+    }
+
+    void release(GenericUrl url) {
+        total.release();
+        registries.get(key(url)).release();
+    }
+
+    // This is used for testing
+    int inUse(GenericUrl url) {
+        Limit limit = registries.get(key(url));
+        return limit == null ? 0 : limit.getInUse();
+    }
+
+    private int maxFor(String key) {
+        Integer max = maxPerRegistry.get(key);
+        return max != null ? max : defaultMaxPerRegistry;
+    }
+
+    private static String key(GenericUrl url) {
+        String scheme = url.getScheme().toLowerCase();
+        int port = url.getPort();
+        if (port < 0) {
+            port = "https".equals(scheme) ? 443 : 80;
+        }
+        return scheme + "://" + url.getHost().toLowerCase() + ":" + port;
+    }
+}
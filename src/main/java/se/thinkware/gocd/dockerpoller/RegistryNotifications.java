@@ -0,0 +1,150 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Reads the image changes out of registry notifications. Both the envelopes
+// of the docker registry (https://docs.docker.com/registry/notifications/)
+// and Harbor's webhook payloads are understood.
+final class RegistryNotifications {
+
+    static class Event {
+        private final String action;
+        private final String registry;
+        private final String repository;
+        private final String tag;
+
+        Event(String action, String registry, String repository, String tag) {
+            this.action = action;
+            this.registry = registry;
+            this.repository = repository;
+            this.tag = tag;
+        }
+
+        String getAction() {
+            return action;
+        }
+
+        // The host of the registry the event is from, with its port if the
+        // registry gave one. Null if the notification doesn't say.
+        String getRegistry() {
+            return registry;
+        }
+
+        String getRepository() {
+            return repository;
+        }
+
+        // Null if the event isn't about a tag, e.g. a push by digest.
+        String getTag() {
+            return tag;
+        }
+
+        @Override
+        public String toString() {
+            return action + " " + (registry == null ? "" : registry + "/") + repository + (tag == null ? "" : ":" + tag);
+        }
+    }
+
+    private RegistryNotifications() {
+    }
+
+    // The manifest pushes and deletes in the notification. Blob events are
+    // left out as they don't change any tag. Null if it isn't a notification
+    // we understand.
+    static List<Event> parse(String body) {
+        JsonObject notification = ImageManifests.parse(body);
+        if (notification == null) {
+            return null;
+        }
+        if (notification.has("events") && notification.get("events").isJsonArray()) {
+            return registryEvents(notification.getAsJsonArray("events"));
+        }
+        if (notification.has("event_data") && notification.get("event_data").isJsonObject()) {
+            return harborEvents(string(notification, "type"), notification.getAsJsonObject("event_data"));
+        }
+        return null;
+    }
+
+    // {"events": [{"action": "push", "target": {"mediaType": "...manifest...", "repository": "a/b", "tag": "1.0"},
+    //   "request": {"host": "registry:5000"}}]}
+    private static List<Event> registryEvents(JsonArray events) {
+        List<Event> result = new ArrayList<>();
+        for (JsonElement element : events) {
+            if (!element.isJsonObject()) {
+                continue;
+            }
+            JsonObject event = element.getAsJsonObject();
+            String action = string(event, "action");
+            JsonObject target = object(event, "target");
+            if (target == null || !("push".equals(action) || "delete".equals(action))) {
+                continue;
+            }
+            String repository = string(target, "repository");
+            String tag = string(target, "tag");
+            String mediaType = string(target, "mediaType");
+            boolean manifest = tag != null || (mediaType != null && mediaType.contains("manifest"));
+            JsonObject request = object(event, "request");
+            String registry = request == null ? null : string(request, "host");
+            if (repository != null && manifest) {
+                result.add(new Event(action, registry, repository, tag));
+            }
+        }
+        return result;
+    }
+
+    // {"type": "PUSH_ARTIFACT", "event_data": {"repository": {"repo_full_name": "a/b"},
+    //   "resources": [{"tag": "1.0", "resource_url": "harbor/a/b:1.0"}]}}
+    private static List<Event> harborEvents(String type, JsonObject eventData) {
+        String action;
+        if ("PUSH_ARTIFACT".equals(type) || "pushImage".equals(type)) {
+            action = "push";
+        } else if ("DELETE_ARTIFACT".equals(type) || "deleteImage".equals(type)) {
+            action = "delete";
+        } else {
+            return Collections.emptyList();
+        }
+        JsonObject repositoryData = object(eventData, "repository");
+        String repository = repositoryData == null ? null : string(repositoryData, "repo_full_name");
+        if (repository == null) {
+            return Collections.emptyList();
+        }
+        List<Event> result = new ArrayList<>();
+        String registry = null;
+        JsonElement resources = eventData.get("resources");
+        if (resources != null && resources.isJsonArray()) {
+            for (JsonElement resource : resources.getAsJsonArray()) {
+                if (resource.isJsonObject()) {
+                    JsonObject resourceData = resource.getAsJsonObject();
+                    registry = registryOf(string(resourceData, "resource_url"));
+                    result.add(new Event(action, registry, repository, string(resourceData, "tag")));
+                }
+            }
+        }
+        if (result.isEmpty()) {
+            result.add(new Event(action, registry, repository, null));
+        }
+        return result;
+    }
+
+    // The host and port in front of the repository in a Harbor resource url.
+    private static String registryOf(String resourceUrl) {
+        int slash = resourceUrl == null ? -1 : resourceUrl.indexOf('/');
+        return slash <= 0 ? null : resourceUrl.substring(0, slash);
+    }
+
+    private static JsonObject object(JsonObject object, String member) {
+        JsonElement element = object.get(member);
+        return element != null && element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+
+    private static String string(JsonObject object, String member) {
+        JsonElement element = object.get(member);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+}
@@ -0,0 +1,56 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The connection and rate limits that repositories configure for the
+// registries they use. Repositories that point at the same registry share
+// its connections and its rate limit, so the strictest of their limits
+// applies. Zero means no limit.
+class RegistrySettings {
+
+    static final class Limits {
+        final int maxConnections;
+        final int requestsPerMinute;
+
+        Limits(int maxConnections, int requestsPerMinute) {
+            this.maxConnections = maxConnections;
+            this.requestsPerMinute = requestsPerMinute;
+        }
+
+        boolean sameAs(Limits other) {
+            return other != null
+                    && maxConnections == other.maxConnections
+                    && requestsPerMinute == other.requestsPerMinute;
+        }
+    }
+
+    private final Map<String, Map<String, Limits>> byRegistry = new HashMap<>();
+    private final Map<String, Limits> applied = new HashMap<>();
+
+    // Records the limits of a repository. Returns the limits that now apply
+    // to the registry if they changed, or null if nothing needs to be done.
+    synchronized Limits update(String registry, String repository, Limits limits) {
+        Map<String, Limits> repositories = byRegistry.computeIfAbsent(registry, key -> new HashMap<>());
+        repositories.put(repository, limits);
+        int maxConnections = 0;
+        int requestsPerMinute = 0;
+        for (Limits configured : repositories.values()) {
+            maxConnections = strictest(maxConnections, configured.maxConnections);
+            requestsPerMinute = strictest(requestsPerMinute, configured.requestsPerMinute);
+        }
+        Limits current = new Limits(maxConnections, requestsPerMinute);
+        if (current.sameAs(applied.get(registry))) {
+            return null;
+        }
+        applied.put(registry, current);
+        return current;
+    }
+
+    private static int strictest(int first, int second) {
+        if (first == 0 || second == 0) {
+            return Math.max(first, second);
+        }
+        return Math.min(first, second);
+    }
+}
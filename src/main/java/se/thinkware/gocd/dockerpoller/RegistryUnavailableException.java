@@ -0,0 +1,14 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.io.IOException;
+
+// We didn't ask the registry, or stopped waiting for it, because it won't
+// answer in time. Callers may fall back to what they already know.
+class RegistryUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    RegistryUnavailableException(String message) {
+        super(message);
+    }
+}
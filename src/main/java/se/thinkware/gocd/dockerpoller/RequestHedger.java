@@ -0,0 +1,251 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.javanet.ConnectionFactory;
+import com.google.api.client.http.javanet.DefaultConnectionFactory;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+// Cuts the tail latency of registries that are sometimes slow to answer.
+// When there is no response within the given percentile of the registry's
+// recent response times, the same request is sent once more and the first
+// response wins. The other one is aborted, and so are both when the Deadline
+// passes, so that they don't hold on to a connection: the connection it
+// opened is closed, or its response thrown away if it has arrived.
+//
+// Only for requests without side effects, i.e. GET and HEAD.
+class RequestHedger {
+
+    private static final Logger logger = Logger.getLoggerFor(RequestHedger.class);
+
+    // The attempt the current thread is sending, if any.
+    private static final ThreadLocal<Attempt> running = new ThreadLocal<>();
+
+    interface Copier {
+        HttpRequest copy() throws IOException;
+    }
+
+    private final int percentile;
+    private final ExecutorService executor;
+    private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+
+    RequestHedger(int percentile) {
+        this(percentile, Executors.newCachedThreadPool(RevisionPrefetcher.daemonThreads("docker-poller-hedge")));
+    }
+
+    RequestHedger(int percentile, ExecutorService executor) {
+        this.percentile = percentile;
+        this.executor = executor;
+    }
+
+    // The hedger configured by system property, or null if hedging is off.
+    static RequestHedger fromSystemProperties() {
+        int percentile = Integer.getInteger(Constants.HEDGE_PERCENTILE_PROPERTY, 0);
+        if (percentile <= 0 || percentile >= 100) {
+            return null;
+        }
+        logger.info(String.format("Hedging requests slower than the %dth percentile", percentile));
+        return new RequestHedger(percentile);
+    }
+
+    LatencyTracker latenciesOf(String registry) {
+        return latencies.computeIfAbsent(registry, key -> new LatencyTracker());
+    }
+
+    // The copy is only sent if mayHedge agrees when it is due, so that e.g.
+    // a rate limiter is only asked for the requests that are really sent.
+    HttpResponse execute(
+            String registry,
+            HttpRequest request,
+            Copier copier,
+            BooleanSupplier mayHedge
+    ) throws IOException {
+        LatencyTracker tracker = latenciesOf(registry);
+        String method = request.getRequestMethod();
+        long hedgeAfter = "GET".equals(method) || "HEAD".equals(method) ? tracker.percentile(percentile) : -1;
+        if (hedgeAfter < 0 || hedgeAfter >= Deadline.remainingMillis()) {
+            return timed(request, tracker);
+        }
+
+        // Copied up front, the request's headers aren't safe to read while it's being sent.
+        HttpRequest copy = copier.copy();
+        Attempt first = new Attempt();
+        first.send(request, tracker);
+        HttpResponse response = await(first.response, hedgeAfter);
+        if (response != null) {
+            return response;
+        }
+        if (!mayHedge.getAsBoolean()) {
+            return awaitUntilDeadline(first.response, first);
+        }
+        logger.debug(String.format("No response from %s within %d ms, sending it again", request.getUrl(), hedgeAfter));
+        Attempt second = new Attempt();
+        second.send(copy, tracker);
+        return awaitUntilDeadline(firstOf(first, second), first, second);
+    }
+
+    // Lets the attempts close the connections they open, so that the JDK's
+    // connections can be aborted while they wait for a response.
+    static ConnectionFactory connectionFactory() {
+        ConnectionFactory connections = new DefaultConnectionFactory();
+        return url -> {
+            HttpURLConnection connection = connections.openConnection(url);
+            Attempt attempt = running.get();
+            if (attempt != null) {
+                attempt.opened(connection);
+            }
+            return connection;
+        };
+    }
+
+    // A request sent on the executor.
+    private class Attempt {
+        private CompletableFuture<HttpResponse> response;
+        private Thread thread;
+        private HttpURLConnection connection;
+        private boolean aborted;
+
+        void send(HttpRequest request, LatencyTracker tracker) {
+            response = CompletableFuture.supplyAsync(() -> {
+                started();
+                try {
+                    return timed(request, tracker);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    finished();
+                }
+            }, executor);
+        }
+
+        private synchronized void started() {
+            if (aborted) {
+                throw new UncheckedIOException(new InterruptedIOException("Aborted"));
+            }
+            thread = Thread.currentThread();
+            running.set(this);
+        }
+
+        private synchronized void finished() {
+            running.remove();
+            thread = null;
+            // The pool thread is not to be interrupted by an abort that came too late.
+            Thread.interrupted();
+        }
+
+        synchronized void opened(HttpURLConnection connection) throws InterruptedIOException {
+            if (aborted) {
+                throw new InterruptedIOException("Aborted");
+            }
+            this.connection = connection;
+        }
+
+        // Closes the connection while the response is awaited, interrupts
+        // a request that waits on something else, and throws away the
+        // response if it has arrived.
+        void abort() {
+            synchronized (this) {
+                if (aborted) {
+                    return;
+                }
+                aborted = true;
+                if (thread != null) {
+                    if (connection != null) {
+                        connection.disconnect();
+                    }
+                    thread.interrupt();
+                }
+            }
+            response.thenAccept(RequestHedger::discard);
+        }
+    }
+
+    private static HttpResponse timed(HttpRequest request, LatencyTracker tracker) throws IOException {
+        long start = System.nanoTime();
+        HttpResponse response = request.execute();
+        if (response.getStatusCode() < 500) {
+            tracker.record((System.nanoTime() - start) / 1_000_000);
+        }
+        return response;
+    }
+
+    // Completes with the first response, or fails when both requests have
+    // failed. The other request is aborted.
+    private static CompletableFuture<HttpResponse> firstOf(Attempt first, Attempt second) {
+        CompletableFuture<HttpResponse> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (Attempt candidate : Arrays.asList(first, second)) {
+            Attempt other = candidate == first ? second : first;
+            candidate.response.whenComplete((response, failure) -> {
+                if (failure == null) {
+                    // Else this one was aborted when the other won.
+                    if (winner.complete(response)) {
+                        other.abort();
+                    }
+                } else if (failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(failure);
+                }
+            });
+        }
+        return winner;
+    }
+
+    private static HttpResponse awaitUntilDeadline(
+            CompletableFuture<HttpResponse> future,
+            Attempt... attempts
+    ) throws IOException {
+        HttpResponse response = await(future, Deadline.remainingMillis());
+        if (response == null) {
+            for (Attempt attempt : attempts) {
+                attempt.abort();
+            }
+            throw new DeadlineExceededException("Out of time waiting for the registry");
+        }
+        return response;
+    }
+
+    // The response, or null if it didn't arrive in time.
+    private static HttpResponse await(CompletableFuture<HttpResponse> future, long millis) throws IOException {
+        try {
+            return future.get(millis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the registry");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void discard(HttpResponse response) {
+        try {
+            response.disconnect();
+        } catch (IOException e) {
+            logger.debug(String.format("Could not close late response: %s", e.getMessage()));
+        }
+    }
+}
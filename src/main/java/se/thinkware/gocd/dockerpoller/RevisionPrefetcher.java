@@ -0,0 +1,283 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperties;
+import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Keeps the latest revision of every material GoCD asks about fresh on a
+// pool of background threads, so that GoCD's material update threads are
+// answered from memory instead of waiting for a slow registry. Only the
+// first request for a material has to wait for the registry.
+//
+// Materials are told apart by registry, image and tag filter. Each one is
+// refreshed at its own pace, see RefreshBackoff, and a failed refresh counts
+// as one that found nothing new. One that GoCD hasn't asked
+// about for IDLE_REFRESHES refresh intervals, e.g. because it was removed
+// from all pipelines, is forgotten.
+class RevisionPrefetcher {
+
+    private static final Logger logger = Logger.getLoggerFor(RevisionPrefetcher.class);
+
+    static final int DEFAULT_REFRESH_INTERVAL_SECONDS = 60;
+    static final int DEFAULT_MAX_REFRESH_INTERVAL_SECONDS = 600;
+    static final int DEFAULT_REFRESH_THREADS = 4;
+    static final int IDLE_REFRESHES = 10;
+
+    interface Loader {
+        PackageRevisionMessage load(
+                PackageMaterialProperties packageConfiguration,
+                PackageMaterialProperties repositoryConfiguration
+        );
+    }
+
+    private class Material {
+        final List<String> key;
+        volatile PackageMaterialProperties packageConfiguration;
+        volatile PackageMaterialProperties repositoryConfiguration;
+        volatile PackageRevisionMessage latest;
+        volatile long lastRequested;
+        final RefreshBackoff backoff = new RefreshBackoff(refreshInterval.toMillis(), maxRefreshInterval.toMillis());
+        ScheduledFuture<?> refresh;
+        final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+        Material(
+                List<String> key,
+                PackageMaterialProperties packageConfiguration,
+                PackageMaterialProperties repositoryConfiguration,
+                PackageRevisionMessage latest
+        ) {
+            this.key = key;
+            this.latest = latest;
+            requested(packageConfiguration, repositoryConfiguration);
+        }
+
+        // Refreshes use the configuration of the last request, in case e.g.
+        // the page size has changed since.
+        void requested(
+                PackageMaterialProperties packageConfiguration,
+                PackageMaterialProperties repositoryConfiguration
+        ) {
+            this.packageConfiguration = packageConfiguration;
+            this.repositoryConfiguration = repositoryConfiguration;
+            this.lastRequested = clock.millis();
+        }
+    }
+
+    private final Loader loader;
+    private final ScheduledExecutorService scheduler;
+    private final Duration refreshInterval;
+    private final Duration maxRefreshInterval;
+    private final Clock clock;
+    private final ConcurrentMap<List<String>, Material> materials = new ConcurrentHashMap<>();
+
+    RevisionPrefetcher(Loader loader, Duration refreshInterval, Duration maxRefreshInterval, int threads) {
+        this(
+                loader,
+                refreshInterval,
+                maxRefreshInterval,
+                Executors.newScheduledThreadPool(threads, daemonThreads("docker-poller-refresh")),
+                Clock.systemUTC()
+        );
+    }
+
+    RevisionPrefetcher(
+            Loader loader,
+            Duration refreshInterval,
+            Duration maxRefreshInterval,
+            ScheduledExecutorService scheduler,
+            Clock clock
+    ) {
+        this.loader = loader;
+        this.refreshInterval = refreshInterval;
+        this.maxRefreshInterval = maxRefreshInterval;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    // The prefetcher configured by system properties, or null if background
+    // refreshing is turned off with a zero refresh interval. Quiet materials
+    // only back off when a max interval is set, or when pushed tags are
+    // refreshed right away because the registry notifies us.
+    static RevisionPrefetcher fromSystemProperties(Loader loader, boolean notified) {
+        int seconds = Integer.getInteger(Constants.REFRESH_INTERVAL_PROPERTY, DEFAULT_REFRESH_INTERVAL_SECONDS);
+        if (seconds <= 0) {
+            logger.info("Background refresh of revisions is off");
+            return null;
+        }
+        int maxSeconds = Integer.getInteger(
+                Constants.MAX_REFRESH_INTERVAL_PROPERTY, notified ? DEFAULT_MAX_REFRESH_INTERVAL_SECONDS : seconds);
+        int threads = Math.max(1, Integer.getInteger(Constants.REFRESH_THREADS_PROPERTY, DEFAULT_REFRESH_THREADS));
+        logger.info(String.format(
+                "Refreshing revisions every %d to %d seconds on %d threads", seconds, Math.max(seconds, maxSeconds), threads));
+        return new RevisionPrefetcher(loader, Duration.ofSeconds(seconds), Duration.ofSeconds(maxSeconds), threads);
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    static List<String> keyOf(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration
+    ) {
+        String filter = packageConfiguration.hasKey(Constants.DOCKER_TAG_FILTER)
+                ? packageConfiguration.getProperty(Constants.DOCKER_TAG_FILTER).value()
+                : "";
+        return Arrays.asList(
+                repositoryConfiguration.getProperty(Constants.DOCKER_REGISTRY_URL).value(),
+                packageConfiguration.getProperty(Constants.DOCKER_IMAGE).value(),
+                filter,
+                TagOrder.of(packageConfiguration).getPropertyValue()
+        );
+    }
+
+    PackageRevisionMessage getLatestRevision(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration
+    ) {
+        List<String> key = keyOf(packageConfiguration, repositoryConfiguration);
+        Material material = materials.get(key);
+        if (material != null) {
+            material.requested(packageConfiguration, repositoryConfiguration);
+            return material.latest;
+        }
+
+        // Nothing known yet, so this one has to wait for the registry.
+        PackageRevisionMessage latest = loader.load(packageConfiguration, repositoryConfiguration);
+        Material added = new Material(key, packageConfiguration, repositoryConfiguration, latest);
+        Material existing = materials.putIfAbsent(key, added);
+        if (existing != null) {
+            existing.requested(packageConfiguration, repositoryConfiguration);
+            return latest;
+        }
+        scheduleRefresh(added, added.backoff.delayMillis());
+        logger.debug(String.format("Refreshing %s in the background", key));
+        return latest;
+    }
+
+    int size() {
+        return materials.size();
+    }
+
+    // This is used for testing
+    Duration getMaxRefreshInterval() {
+        return maxRefreshInterval;
+    }
+
+    // This is used for testing, the delay before the next refresh of the material.
+    long refreshDelayMillis(
+            PackageMaterialProperties packageConfiguration,
+            PackageMaterialProperties repositoryConfiguration
+    ) {
+        return materials.get(keyOf(packageConfiguration, repositoryConfiguration)).backoff.delayMillis();
+    }
+
+    // Refreshes the materials of the image right away, e.g. because the
+    // registry told us a tag was pushed. Events that arrive while a refresh
+    // is waiting to run share it.
+    void refreshImage(String image) {
+        String name = trimSlashes(image);
+        for (Material material : materials.values()) {
+            if (name.equals(trimSlashes(material.key.get(1))) && material.refreshQueued.compareAndSet(false, true)) {
+                scheduler.execute(() -> {
+                    material.refreshQueued.set(false);
+                    refreshAndReschedule(material);
+                });
+            }
+        }
+    }
+
+    static String trimSlashes(String image) {
+        int start = 0;
+        int end = image.length();
+        while (start < end && image.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && image.charAt(end - 1) == '/') {
+            end--;
+        }
+        return image.substring(start, end);
+    }
+
+    // This is used for testing, so that we don't have to wait for the scheduler
+    void refreshAll() {
+        materials.values().forEach(this::refresh);
+    }
+
+    // Replaces the scheduled refresh of the material, if any.
+    private void scheduleRefresh(Material material, long delayMillis) {
+        synchronized (material) {
+            if (material.refresh != null) {
+                material.refresh.cancel(false);
+            }
+            material.refresh = scheduler.schedule(() -> refreshAndReschedule(material), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refreshAndReschedule(Material material) {
+        if (refresh(material)) {
+            long delay = material.backoff.delayMillis();
+            logger.debug(String.format("Refreshing %s again in %d seconds", material.key, delay / 1000));
+            scheduleRefresh(material, delay);
+        }
+    }
+
+    // False if the material was forgotten instead.
+    private boolean refresh(Material material) {
+        synchronized (material) {
+            if (clock.millis() - material.lastRequested > IDLE_REFRESHES * refreshInterval.toMillis()) {
+                logger.info(String.format("No requests for %s lately, no longer refreshing it", material.key));
+                materials.remove(material.key, material);
+                if (material.refresh != null) {
+                    material.refresh.cancel(false);
+                }
+                return false;
+            }
+            PackageRevisionMessage previous = material.latest;
+            PackageRevisionMessage loaded;
+            try {
+                loaded = loader.load(material.packageConfiguration, material.repositoryConfiguration);
+            } catch (RuntimeException e) {
+                // An exception would stop the scheduled refreshes, keep what we have instead.
+                logger.warn(String.format("Could not refresh %s: %s", material.key, e.getMessage()));
+                material.backoff.refreshed(false, clock.millis());
+                return true;
+            }
+            // The loader answers with no revision when the registry fails,
+            // which is no reason to forget the one we have.
+            if (loaded.getRevision() == null && previous.getRevision() != null) {
+                logger.warn(String.format("Got no revision for %s, keeping %s", material.key, previous.getRevision()));
+                material.backoff.refreshed(false, clock.millis());
+                return true;
+            }
+            material.latest = loaded;
+            material.backoff.refreshed(!sameRevision(previous, loaded), clock.millis());
+            return true;
+        }
+    }
+
+    private static boolean sameRevision(PackageRevisionMessage first, PackageRevisionMessage second) {
+        return Objects.equals(first.getRevision(), second.getRevision())
+                && Objects.equals(first.getDataFor(Constants.DIGEST_DATA_KEY), second.getDataFor(Constants.DIGEST_DATA_KEY));
+    }
+}
@@ -0,0 +1,55 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+// Coalesces concurrent calls with the same key: the first caller does the
+// work and everyone who asks for the same key meanwhile gets its result.
+class SingleFlight<K, V> {
+
+    interface Call<V> {
+        V call() throws IOException;
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    V run(K key, Call<V> call) throws IOException {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> flight = inFlight.putIfAbsent(key, mine);
+        if (flight == null) {
+            try {
+                V result = call.call();
+                mine.complete(result);
+                return result;
+            } catch (Throwable t) {
+                mine.completeExceptionally(t);
+                throw t;
+            } finally {
+                inFlight.remove(key, mine);
+            }
+        }
+
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while waiting for %s", key));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
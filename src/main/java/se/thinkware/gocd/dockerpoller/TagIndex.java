@@ -0,0 +1,534 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+// The tags of an image in little memory, for images that are tagged on
+// every build and have tens of thousands of tags.
+//
+// The tags are sorted by their UTF-8 bytes and front coded: in each block of
+// BLOCK_SIZE tags the first is stored whole, the others as the length of the
+// prefix they share with the tag before and the rest of their bytes. Finding
+// a tag is a binary search over the first tags of the blocks and a walk
+// through one block.
+//
+// For the orderings that have been asked for, the positions of the tags
+// sorted by their sort keys are kept too, along with the keys, so that the
+// latest tags for a filter are found by walking down from the top, and the
+// first tag after a revision by a binary search over the keys.
+class TagIndex {
+
+    static final int BLOCK_SIZE = 16;
+
+    // Bounds for what is read back, far above any real image.
+    static final int MAX_SIZE = 1 << 24;
+    static final int MAX_LENGTH = 1 << 16;
+
+    private static final TagIndex EMPTY = new TagIndex(new byte[0], new int[0], 0, 0);
+
+    private final byte[] data;
+    private final int[] blocks;
+    private final int size;
+    private final int maxLength;
+    private final Map<TagOrder, Ordering> ordered = new EnumMap<>(TagOrder.class);
+
+    private TagIndex(byte[] data, int[] blocks, int size, int maxLength) {
+        this.data = data;
+        this.blocks = blocks;
+        this.size = size;
+        this.maxLength = maxLength;
+    }
+
+    static TagIndex empty() {
+        return EMPTY;
+    }
+
+    static TagIndex of(Collection<String> tags) {
+        Builder builder = new Builder(tags.size());
+        tags.forEach(builder);
+        return builder.build();
+    }
+
+    // Takes the tags as they are parsed, so that a tag list never has to be
+    // held as strings. Only their UTF-8 bytes are kept until the index is built.
+    static class Builder implements Consumer<String> {
+        private byte[][] encoded;
+        private int count;
+
+        Builder() {
+            this(16);
+        }
+
+        Builder(int capacity) {
+            encoded = new byte[Math.max(capacity, 1)][];
+        }
+
+        @Override
+        public void accept(String tag) {
+            if (count == encoded.length) {
+                encoded = Arrays.copyOf(encoded, count * 2);
+            }
+            encoded[count++] = tag.getBytes(StandardCharsets.UTF_8);
+        }
+
+        TagIndex build() {
+            return count == 0 ? EMPTY : encode(encoded, count);
+        }
+    }
+
+    private static TagIndex encode(byte[][] encoded, int count) {
+        Arrays.sort(encoded, 0, count, TagIndex::compareBytes);
+
+        Output out = new Output(count * 8);
+        List<Integer> blockStarts = new ArrayList<>();
+        byte[] before = null;
+        int size = 0;
+        int maxLength = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] tag = encoded[i];
+            if (before != null && compareBytes(before, tag) == 0) {
+                continue;
+            }
+            if (size % BLOCK_SIZE == 0) {
+                blockStarts.add(out.length);
+                out.writeVarInt(tag.length);
+                out.write(tag, 0, tag.length);
+            } else {
+                int shared = sharedPrefix(before, tag);
+                out.writeVarInt(shared);
+                out.writeVarInt(tag.length - shared);
+                out.write(tag, shared, tag.length - shared);
+            }
+            maxLength = Math.max(maxLength, tag.length);
+            before = tag;
+            size++;
+        }
+        int[] blocks = new int[blockStarts.size()];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = blockStarts.get(i);
+        }
+        return new TagIndex(Arrays.copyOf(out.bytes, out.length), blocks, size, maxLength);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(maxLength);
+        out.writeInt(blocks.length);
+        for (int block : blocks) {
+            out.writeInt(block);
+        }
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    // The orderings aren't saved, they are sorted again when asked for.
+    // Every entry is checked, so that a damaged index fails here rather
+    // than when its tags are read later on.
+    static TagIndex readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        int maxLength = in.readInt();
+        int blockCount = in.readInt();
+        if (size < 0 || size > MAX_SIZE || maxLength < 0 || maxLength > MAX_LENGTH
+                || blockCount != (size + BLOCK_SIZE - 1) / BLOCK_SIZE) {
+            throw new IOException("Corrupt tag index");
+        }
+        int[] blocks = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blocks[i] = in.readInt();
+        }
+        // Each tag takes at least a byte, and at most its bytes and two varints.
+        int dataLength = in.readInt();
+        if (dataLength < size || dataLength > (long) size * (maxLength + 10)) {
+            throw new IOException("Corrupt tag index");
+        }
+        byte[] data = new byte[dataLength];
+        in.readFully(data);
+        check(data, blocks, size, maxLength);
+        return size == 0 ? EMPTY : new TagIndex(data, blocks, size, maxLength);
+    }
+
+    // The blocks must start where the one before ends, and each tag must fit
+    // in maxLength, share no more than the tag before has, and come after it.
+    private static void check(byte[] data, int[] blocks, int size, int maxLength) throws IOException {
+        byte[] before = new byte[maxLength];
+        byte[] tag = new byte[maxLength];
+        int beforeLength = -1;
+        int[] offset = {0};
+        for (int block = 0; block < blocks.length; block++) {
+            int end = block + 1 < blocks.length ? blocks[block + 1] : data.length;
+            if (blocks[block] != offset[0] || end <= offset[0] || end > data.length) {
+                throw new IOException("Corrupt tag index");
+            }
+            int count = Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+            for (int i = 0; i < count; i++) {
+                int shared = i == 0 ? 0 : checkedVarInt(data, offset, end);
+                int rest = checkedVarInt(data, offset, end);
+                if (shared > beforeLength && i > 0 || rest > maxLength - shared || rest > end - offset[0]) {
+                    throw new IOException("Corrupt tag index");
+                }
+                System.arraycopy(before, 0, tag, 0, shared);
+                System.arraycopy(data, offset[0], tag, shared, rest);
+                offset[0] += rest;
+                int length = shared + rest;
+                if (beforeLength >= 0 && compareBytes(before, beforeLength, tag, length) >= 0) {
+                    throw new IOException("Corrupt tag index");
+                }
+                byte[] swap = before;
+                before = tag;
+                tag = swap;
+                beforeLength = length;
+            }
+            if (offset[0] != end) {
+                throw new IOException("Corrupt tag index");
+            }
+        }
+        if (offset[0] != data.length) {
+            throw new IOException("Corrupt tag index");
+        }
+    }
+
+    private static int checkedVarInt(byte[] data, int[] offset, int end) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (offset[0] >= end || shift > 28) {
+                throw new IOException("Corrupt tag index");
+            }
+            b = data[offset[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        if (value < 0) {
+            throw new IOException("Corrupt tag index");
+        }
+        return value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // The bytes kept for the tags, without the orderings.
+    int memoryBytes() {
+        return data.length + blocks.length * 4;
+    }
+
+    boolean contains(String tag) {
+        byte[] wanted = tag.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compareToHead(middle, wanted);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        // Not a block's first tag, so it can only be in the block before.
+        if (high < 0) {
+            return false;
+        }
+        Cursor cursor = new Cursor(high);
+        while (cursor.next()) {
+            int cmp = compareBytes(cursor.tag, cursor.length, wanted, wanted.length);
+            if (cmp >= 0) {
+                return cmp == 0;
+            }
+        }
+        return false;
+    }
+
+    // The tag at the position in byte order.
+    String get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(position));
+        }
+        Cursor cursor = new Cursor(position / BLOCK_SIZE);
+        for (int i = position % BLOCK_SIZE; i >= 0; i--) {
+            cursor.next();
+        }
+        return cursor.toString();
+    }
+
+    void forEach(Consumer<String> consumer) {
+        Cursor cursor = new Cursor(0, blocks.length);
+        while (cursor.next()) {
+            consumer.accept(cursor.toString());
+        }
+    }
+
+    // Walks both indexes side by side in byte order, and passes the tags
+    // that are only in before to removed, those only in after to added.
+    // Only the tags that differ are turned into strings.
+    static void diff(TagIndex before, TagIndex after, Consumer<String> removed, Consumer<String> added) {
+        Cursor old = before.new Cursor(0, before.blocks.length);
+        Cursor current = after.new Cursor(0, after.blocks.length);
+        boolean hasOld = old.next();
+        boolean hasCurrent = current.next();
+        while (hasOld && hasCurrent) {
+            int cmp = old.compareTo(current);
+            if (cmp < 0) {
+                removed.accept(old.toString());
+                hasOld = old.next();
+            } else if (cmp > 0) {
+                added.accept(current.toString());
+                hasCurrent = current.next();
+            } else {
+                hasOld = old.next();
+                hasCurrent = current.next();
+            }
+        }
+        for (; hasOld; hasOld = old.next()) {
+            removed.accept(old.toString());
+        }
+        for (; hasCurrent; hasCurrent = current.next()) {
+            added.accept(current.toString());
+        }
+    }
+
+    // The biggest tag matching the pattern, or null if there is none.
+    // Without a pattern every tag matches.
+    String latest(TagOrder order, Pattern pattern) {
+        List<String> top = top(order, pattern, 1);
+        return top.isEmpty() ? null : top.get(0);
+    }
+
+    // The k biggest tags matching the pattern, biggest first.
+    List<String> top(TagOrder order, Pattern pattern, int k) {
+        int[] positions = ordered(order).positions;
+        List<String> top = new ArrayList<>(Math.min(k, positions.length));
+        for (int i = positions.length - 1; i >= 0 && top.size() < k; i--) {
+            String tag = get(positions[i]);
+            if (pattern == null || pattern.matcher(tag).find()) {
+                top.add(tag);
+            }
+        }
+        return top;
+    }
+
+    // The smallest tag matching the pattern with a key above the given one,
+    // or null if there is none.
+    String after(TagOrder order, Pattern pattern, long[] key) {
+        Ordering ordering = ordered(order);
+        for (int i = ordering.firstAbove(key); i < ordering.positions.length; i++) {
+            String tag = get(ordering.positions[i]);
+            if (pattern == null || pattern.matcher(tag).find()) {
+                return tag;
+            }
+        }
+        return null;
+    }
+
+    // The tags that have a key in an ordering, smallest first. The keys are
+    // stored one after the other, the i:th from starts[i] up to starts[i + 1].
+    private static class Ordering {
+        final int[] positions;
+        final long[] keys;
+        final int[] starts;
+
+        Ordering(int[] positions, long[] keys, int[] starts) {
+            this.positions = positions;
+            this.keys = keys;
+            this.starts = starts;
+        }
+
+        // The index of the first tag with a key above the given one.
+        int firstAbove(long[] key) {
+            int low = 0;
+            int high = positions.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareTo(middle, key) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // Like TagOrder.compare, for the key of the i:th tag.
+        private int compareTo(int i, long[] key) {
+            int from = starts[i];
+            int length = starts[i + 1] - from;
+            for (int j = 0; j < Math.min(length, key.length); j++) {
+                if (keys[from + j] != key[j]) {
+                    return keys[from + j] < key[j] ? -1 : 1;
+                }
+            }
+            return Integer.compare(length, key.length);
+        }
+    }
+
+    private synchronized Ordering ordered(TagOrder order) {
+        Ordering ordering = ordered.get(order);
+        if (ordering == null) {
+            long[][] keys = new long[size][];
+            List<Integer> withKey = new ArrayList<>(size);
+            int[] position = {0};
+            forEach(tag -> {
+                keys[position[0]] = order.key(tag);
+                if (keys[position[0]] != null) {
+                    withKey.add(position[0]);
+                }
+                position[0]++;
+            });
+            withKey.sort((first, second) -> TagOrder.compare(keys[first], keys[second]));
+            int[] positions = new int[withKey.size()];
+            int[] starts = new int[positions.length + 1];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = withKey.get(i);
+                starts[i + 1] = starts[i] + keys[positions[i]].length;
+            }
+            long[] sortedKeys = new long[starts[positions.length]];
+            for (int i = 0; i < positions.length; i++) {
+                System.arraycopy(keys[positions[i]], 0, sortedKeys, starts[i], starts[i + 1] - starts[i]);
+            }
+            ordering = new Ordering(positions, sortedKeys, starts);
+            ordered.put(order, ordering);
+        }
+        return ordering;
+    }
+
+    private int compareToHead(int block, byte[] wanted) {
+        int[] offset = {blocks[block]};
+        int length = readVarInt(data, offset);
+        return compareBytes(data, offset[0], length, wanted, 0, wanted.length);
+    }
+
+    // Decodes the tags of a range of blocks one after the other into one buffer.
+    private class Cursor {
+        private final byte[] tag = new byte[maxLength];
+        private final int end;
+        private final int[] offset = new int[1];
+        private int nextBlock;
+        private int length = -1;
+
+        Cursor(int block) {
+            this(block, block + 1);
+        }
+
+        // The blocks from the first up to, but not including, the last.
+        Cursor(int fromBlock, int toBlock) {
+            offset[0] = fromBlock < blocks.length ? blocks[fromBlock] : data.length;
+            end = toBlock < blocks.length ? blocks[toBlock] : data.length;
+            nextBlock = fromBlock;
+        }
+
+        boolean next() {
+            if (offset[0] >= end) {
+                return false;
+            }
+            int shared = 0;
+            if (nextBlock < blocks.length && offset[0] == blocks[nextBlock]) {
+                nextBlock++;
+            } else {
+                shared = readVarInt(data, offset);
+            }
+            int rest = readVarInt(data, offset);
+            System.arraycopy(data, offset[0], tag, shared, rest);
+            offset[0] += rest;
+            length = shared + rest;
+            return true;
+        }
+
+        int compareTo(Cursor other) {
+            return compareBytes(tag, length, other.tag, other.length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(tag, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class Output {
+        private byte[] bytes;
+        private int length;
+
+        Output(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void write(byte[] source, int from, int count) {
+            ensure(count);
+            System.arraycopy(source, from, bytes, length, count);
+            length += count;
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        private void ensure(int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+        }
+    }
+
+    private static int readVarInt(byte[] data, int[] offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[offset[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int sharedPrefix(byte[] first, byte[] second) {
+        int length = Math.min(first.length, second.length);
+        int i = 0;
+        while (i < length && first[i] == second[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int compareBytes(byte[] first, byte[] second) {
+        return compareBytes(first, 0, first.length, second, 0, second.length);
+    }
+
+    private static int compareBytes(byte[] first, int firstLength, byte[] second, int secondLength) {
+        return compareBytes(first, 0, firstLength, second, 0, secondLength);
+    }
+
+    // Unsigned, so that the order is the same as that of the code points.
+    private static int compareBytes(byte[] first, int firstFrom, int firstLength, byte[] second, int secondFrom, int secondLength) {
+        int length = Math.min(firstLength, secondLength);
+        for (int i = 0; i < length; i++) {
+            int diff = (first[firstFrom + i] & 0xFF) - (second[secondFrom + i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return firstLength - secondLength;
+    }
+}
@@ -0,0 +1,222 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.HttpHeaders;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Remembers the validators (ETag and Last-Modified) of the tag list last
+// fetched for each image, together with the latest revision found for each
+// tag filter and the manifest digests of those revisions. An unchanged tag
+// list then costs a 304 instead of a download.
+//
+// With a snapshot store the entries survive restarts, along with the tags
+// themselves. The store is read the first time the cache is used, and
+// written in the background.
+class TagListCache {
+
+    static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final Map<String, String> latestByFilter = new ConcurrentHashMap<>();
+        private final Map<String, String> digestByTag = new ConcurrentHashMap<>();
+        private volatile TagIndex tags;
+
+        Entry(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        static Entry fromResponse(HttpHeaders headers) {
+            if (headers.getETag() == null && headers.getLastModified() == null) {
+                return null;
+            }
+            return new Entry(headers.getETag(), headers.getLastModified());
+        }
+
+        HttpHeaders conditionalHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setIfNoneMatch(etag);
+            headers.setIfModifiedSince(lastModified);
+            return headers;
+        }
+
+        // Whatever identifies this version of the tag list.
+        String validator() {
+            return etag != null ? etag : lastModified;
+        }
+
+        String getLatest(String filter) {
+            return latestByFilter.get(filter);
+        }
+
+        void putLatest(String filter, String latest) {
+            latestByFilter.put(filter, latest);
+        }
+
+        // The manifest digest of a tag, as long as the tag list is unchanged.
+        String getDigest(String tag) {
+            return digestByTag.get(tag);
+        }
+
+        void putDigest(String tag, String digest) {
+            digestByTag.put(tag, digest);
+        }
+
+        // The tags of this version of the tag list, or null if not known.
+        TagIndex getTags() {
+            return tags;
+        }
+
+        void setTags(TagIndex tags) {
+            this.tags = tags;
+        }
+
+        boolean sameValidators(Entry other) {
+            return Objects.equals(etag, other.etag) && Objects.equals(lastModified, other.lastModified);
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            writeNullable(out, etag);
+            writeNullable(out, lastModified);
+            writeMap(out, latestByFilter);
+            writeMap(out, digestByTag);
+            TagIndex currentTags = tags;
+            out.writeBoolean(currentTags != null);
+            if (currentTags != null) {
+                currentTags.writeTo(out);
+            }
+        }
+
+        static Entry readFrom(DataInput in) throws IOException {
+            Entry entry = new Entry(readNullable(in), readNullable(in));
+            readMap(in, entry.latestByFilter);
+            readMap(in, entry.digestByTag);
+            if (in.readBoolean()) {
+                entry.tags = TagIndex.readFrom(in);
+            }
+            return entry;
+        }
+
+        private static void writeMap(DataOutput out, Map<String, String> map) throws IOException {
+            Map<String, String> copy = new HashMap<>(map);
+            out.writeInt(copy.size());
+            for (Map.Entry<String, String> entry : copy.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        }
+
+        private static void readMap(DataInput in, Map<String, String> map) throws IOException {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                map.put(in.readUTF(), in.readUTF());
+            }
+        }
+
+        private static void writeNullable(DataOutput out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static String readNullable(DataInput in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final TagSnapshotStore store;
+    private volatile boolean loaded;
+
+    TagListCache() {
+        this(null);
+    }
+
+    TagListCache(TagSnapshotStore store) {
+        this.store = store;
+        this.loaded = store == null;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                store.load().forEach(entries::putIfAbsent);
+                loaded = true;
+            }
+        }
+    }
+
+    Entry get(String url) {
+        ensureLoaded();
+        return entries.get(url);
+    }
+
+    // Results for other filters stay valid as long as the tag list is unchanged.
+    void update(String url, Entry entry) {
+        ensureLoaded();
+        Entry previous = entries.put(url, entry);
+        if (previous != null && previous != entry && previous.sameValidators(entry)) {
+            previous.latestByFilter.forEach(entry.latestByFilter::putIfAbsent);
+            previous.digestByTag.forEach(entry.digestByTag::putIfAbsent);
+        }
+        if (store != null) {
+            store.saveIfDue(entries);
+        }
+    }
+
+    // A tag may have been moved to another image without changing the tag
+    // list, so the digests known for the image's tag lists can't be trusted.
+    // Only the tag lists of that image on that registry are affected, or on
+    // any registry when the notification doesn't say which.
+    void forgetDigests(String registry, String image) {
+        ensureLoaded();
+        String tagList = "/v2/" + RevisionPrefetcher.trimSlashes(image) + "/tags/list";
+        entries.forEach((url, entry) -> {
+            URI uri = URI.create(url);
+            if (tagList.equals(uri.getRawPath()) && (registry == null || isRegistry(uri, registry))) {
+                entry.digestByTag.clear();
+            }
+        });
+    }
+
+    // A registry names itself as host or host:port, with or without the
+    // default port.
+    private static boolean isRegistry(URI uri, String registry) {
+        int defaultPort = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        int port = uri.getPort() < 0 ? defaultPort : uri.getPort();
+        return registry.equalsIgnoreCase(uri.getHost() + ":" + port)
+                || (port == defaultPort && registry.equalsIgnoreCase(uri.getHost()));
+    }
+
+    // Saves the entries when the JVM shuts down, so that what was learned
+    // since the last save isn't lost.
+    void saveOnShutdown() {
+        if (store != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::save, "docker-poller-snapshot-save"));
+        }
+    }
+
+    void save() {
+        if (store != null && loaded) {
+            store.save(entries);
+        }
+    }
+
+    void remove(String url) {
+        ensureLoaded();
+        if (entries.remove(url) != null && store != null) {
+            store.saveIfDue(entries);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package se.thinkware.gocd.dockerpoller;
+
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperties;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// How the tags of a package are ordered to find the latest one, chosen with
+// the optional DOCKER_TAG_ORDER package property.
+//
+// A tag is parsed once into a sort key, an array of longs that is compared
+// element by element, a shorter key first when one is a prefix of the other.
+// Comparing keys is cheap and allocates nothing, so the key of the best tag
+// so far is kept along with it. Tags that an ordering can't parse, e.g.
+// "latest" with semver, have no key and are never the latest.
+enum TagOrder {
+
+    // Runs of digits are compared by their numeric value, of any length,
+    // everything else character by character. "1.10" sorts after "1.9".
+    NATURAL("natural") {
+        @Override
+        long[] key(String tag) {
+            return naturalKey(tag);
+        }
+    },
+
+    // Semantic Versioning 2.0 precedence. A leading "v" is allowed, build
+    // metadata is ignored.
+    SEMVER("semver") {
+        @Override
+        long[] key(String tag) {
+            return semverKey(tag);
+        }
+    },
+
+    // By the first date in the tag, like 20180102, 2018-01-02 or
+    // 2018-01-02T03-04-05, or else by a Unix time of 10 or 13 digits. Tags
+    // from the same time are in natural order.
+    DATE("date") {
+        @Override
+        long[] key(String tag) {
+            long millis = dateMillis(tag);
+            if (millis == NO_DATE) {
+                return null;
+            }
+            long[] natural = naturalKey(tag);
+            long[] key = new long[natural.length + 1];
+            key[0] = millis;
+            System.arraycopy(natural, 0, key, 1, natural.length);
+            return key;
+        }
+    },
+
+    // Tags that are nothing but a number, by its value.
+    NUMERIC("numeric") {
+        @Override
+        long[] key(String tag) {
+            if (tag.isEmpty()) {
+                return null;
+            }
+            for (int i = 0; i < tag.length(); i++) {
+                if (!isDigit(tag.charAt(i))) {
+                    return null;
+                }
+            }
+            return naturalKey(tag);
+        }
+    },
+
+    // Character by character, like String.compareTo.
+    LEXICOGRAPHIC("lexicographic") {
+        @Override
+        long[] key(String tag) {
+            long[] key = new long[(tag.length() + 2) / 3];
+            for (int i = 0; i < key.length; i++) {
+                long value = 0;
+                for (int j = i * 3; j < i * 3 + 3; j++) {
+                    value = value << 16 | (j < tag.length() ? tag.charAt(j) : 0);
+                }
+                key[i] = value;
+            }
+            return key;
+        }
+    };
+
+    private static final int DIGITS_PER_CHUNK = 18;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final Pattern SEMVER_PATTERN = Pattern.compile(
+            "^v?(0|[1-9]\\d*)\\.(0|[1-9]\\d*)\\.(0|[1-9]\\d*)"
+                    + "(?:-((?:0|[1-9]\\d*|\\d*[a-zA-Z-][0-9a-zA-Z-]*)(?:\\.(?:0|[1-9]\\d*|\\d*[a-zA-Z-][0-9a-zA-Z-]*))*))?"
+                    + "(?:\\+[0-9a-zA-Z-]+(?:\\.[0-9a-zA-Z-]+)*)?$");
+
+    private final String propertyValue;
+
+    TagOrder(String propertyValue) {
+        this.propertyValue = propertyValue;
+    }
+
+    // The sort key of the tag, or null if this ordering doesn't apply to it.
+    abstract long[] key(String tag);
+
+    String getPropertyValue() {
+        return propertyValue;
+    }
+
+    // The ordering named by the property value, natural if it is empty, or
+    // null for an unknown name.
+    static TagOrder fromPropertyValue(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NATURAL;
+        }
+        for (TagOrder order : values()) {
+            if (order.propertyValue.equalsIgnoreCase(value.trim())) {
+                return order;
+            }
+        }
+        return null;
+    }
+
+    static TagOrder of(PackageMaterialProperties packageConfiguration) {
+        PackageMaterialProperty property = packageConfiguration.getProperty(Constants.DOCKER_TAG_ORDER);
+        TagOrder order = property == null ? NATURAL : fromPropertyValue(property.value());
+        return order == null ? NATURAL : order;
+    }
+
+    // What the latest tag of a filter is stored under. Natural order keeps
+    // the bare filter, which is what was stored before there were orderings.
+    String filterKey(String filter) {
+        return this == NATURAL ? filter : propertyValue + '\0' + filter;
+    }
+
+    static int compare(long[] first, long[] second) {
+        int length = Math.min(first.length, second.length);
+        for (int i = 0; i < length; i++) {
+            if (first[i] != second[i]) {
+                return first[i] < second[i] ? -1 : 1;
+            }
+        }
+        return Integer.compare(first.length, second.length);
+    }
+
+    // A non-digit is one element, its char shifted above any digit count. A
+    // run of digits is '0' shifted the same way plus the number of digits
+    // without leading zeros, followed by the digits in chunks of 18. So a
+    // number meets a non-digit as a '0', and numbers compare by length
+    // before their digits. A char is masked to its 16 bits, which end at
+    // bit 62, so keys stay positive for chars from 0x8000 up too.
+    static long[] naturalKey(String tag) {
+        int length = 0;
+        for (int i = 0; i < tag.length(); ) {
+            if (isDigit(tag.charAt(i))) {
+                int start = skipZeros(tag, i);
+                int end = endOfNumber(tag, start);
+                length += 1 + chunks(end - start);
+                i = end;
+            } else {
+                length++;
+                i++;
+            }
+        }
+        long[] key = new long[length];
+        int k = 0;
+        for (int i = 0; i < tag.length(); ) {
+            char c = tag.charAt(i);
+            if (isDigit(c)) {
+                int start = skipZeros(tag, i);
+                int end = endOfNumber(tag, start);
+                key[k++] = ((long) '0' << 47) | (end - start);
+                for (int chunk = start; chunk < end; chunk += DIGITS_PER_CHUNK) {
+                    key[k++] = digitsValue(tag, chunk, Math.min(chunk + DIGITS_PER_CHUNK, end));
+                }
+                i = end;
+            } else {
+                key[k++] = (c & 0xFFFFL) << 47;
+                i++;
+            }
+        }
+        return key;
+    }
+
+    // Major, minor and patch, then 1 for a release or 0 for a pre-release,
+    // which is followed by its identifiers. A numeric identifier is 1 and
+    // its value, others are 2 and their characters, 8 to a long. Numeric
+    // identifiers sort first, and fewer identifiers before more.
+    static long[] semverKey(String tag) {
+        Matcher matcher = SEMVER_PATTERN.matcher(tag);
+        if (!matcher.matches()
+                || matcher.group(1).length() > DIGITS_PER_CHUNK
+                || matcher.group(2).length() > DIGITS_PER_CHUNK
+                || matcher.group(3).length() > DIGITS_PER_CHUNK) {
+            return null;
+        }
+        String preRelease = matcher.group(4);
+        String[] identifiers = preRelease == null ? new String[0] : preRelease.split("\\.");
+        int length = 4;
+        for (String identifier : identifiers) {
+            if (isNumeric(identifier)) {
+                if (identifier.length() > DIGITS_PER_CHUNK) {
+                    return null;
+                }
+                length += 2;
+            } else {
+                length += 1 + (identifier.length() + 7) / 8;
+            }
+        }
+        long[] key = new long[length];
+        key[0] = Long.parseLong(matcher.group(1));
+        key[1] = Long.parseLong(matcher.group(2));
+        key[2] = Long.parseLong(matcher.group(3));
+        key[3] = preRelease == null ? 1 : 0;
+        int k = 4;
+        for (String identifier : identifiers) {
+            if (isNumeric(identifier)) {
+                key[k++] = 1;
+                key[k++] = Long.parseLong(identifier);
+            } else {
+                key[k++] = 2;
+                for (int i = 0; i < identifier.length(); i += 8) {
+                    long value = 0;
+                    for (int j = i; j < i + 8; j++) {
+                        value = value << 7 | (j < identifier.length() ? identifier.charAt(j) : 0);
+                    }
+                    key[k++] = value;
+                }
+            }
+        }
+        return key;
+    }
+
+    static long dateMillis(String tag) {
+        for (int i = 0; i < tag.length(); i++) {
+            if (!isDigit(tag.charAt(i)) || (i > 0 && isDigit(tag.charAt(i - 1)))) {
+                continue;
+            }
+            long millis = parseDate(tag, i);
+            if (millis != NO_DATE) {
+                return millis;
+            }
+            int digits = endOfNumber(tag, i) - i;
+            if (digits == 10) {
+                return digitsValue(tag, i, i + digits) * 1000;
+            }
+            if (digits == 13) {
+                return digitsValue(tag, i, i + digits);
+            }
+        }
+        return NO_DATE;
+    }
+
+    // A date at start, the same separator or none between its parts, and
+    // maybe a time of day with hours, maybe minutes and maybe seconds.
+    private static long parseDate(String tag, int start) {
+        int i = start;
+        int century = twoDigits(tag, i);
+        int yearOfCentury = twoDigits(tag, i + 2);
+        if (century < 0 || yearOfCentury < 0) {
+            return NO_DATE;
+        }
+        int year = century * 100 + yearOfCentury;
+        i += 4;
+        char separator = i < tag.length() && isDateSeparator(tag.charAt(i)) ? tag.charAt(i) : 0;
+        i += separator == 0 ? 0 : 1;
+        int month = twoDigits(tag, i);
+        i += 2;
+        if (month < 0 || (separator != 0 && !at(tag, i, separator))) {
+            return NO_DATE;
+        }
+        i += separator == 0 ? 0 : 1;
+        int day = twoDigits(tag, i);
+        i += 2;
+        if (day < 0) {
+            return NO_DATE;
+        }
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int time = i < tag.length() && "T-_.".indexOf(tag.charAt(i)) >= 0 ? i + 1 : i;
+        int hours = twoDigits(tag, time);
+        int minutes = twoDigits(tag, skipTimeSeparator(tag, time + 2));
+        if (hours >= 0 && minutes >= 0) {
+            hour = hours;
+            minute = minutes;
+            i = skipTimeSeparator(tag, time + 2) + 2;
+            int seconds = twoDigits(tag, skipTimeSeparator(tag, i));
+            if (seconds >= 0) {
+                second = seconds;
+                i = skipTimeSeparator(tag, i) + 2;
+            }
+        } else if (hours >= 0 && !(time + 2 < tag.length() && isDigit(tag.charAt(time + 2)))) {
+            // YYYYMMDDHH, which as ten digits would otherwise be read as seconds.
+            hour = hours;
+        } else if (i < tag.length() && isDigit(tag.charAt(i))) {
+            // Too many digits for a date alone.
+            return NO_DATE;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC) * 1000;
+        } catch (DateTimeException e) {
+            return NO_DATE;
+        }
+    }
+
+    private static int twoDigits(String tag, int i) {
+        if (i + 1 >= tag.length() || !isDigit(tag.charAt(i)) || !isDigit(tag.charAt(i + 1))) {
+            return -1;
+        }
+        return (tag.charAt(i) - '0') * 10 + tag.charAt(i + 1) - '0';
+    }
+
+    private static int skipTimeSeparator(String tag, int i) {
+        return i < tag.length() && ":-_.".indexOf(tag.charAt(i)) >= 0 ? i + 1 : i;
+    }
+
+    private static boolean isDateSeparator(char c) {
+        return c == '-' || c == '_' || c == '.';
+    }
+
+    private static boolean at(String tag, int i, char c) {
+        return i < tag.length() && tag.charAt(i) == c;
+    }
+
+    private static boolean isNumeric(String identifier) {
+        for (int i = 0; i < identifier.length(); i++) {
+            if (!isDigit(identifier.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int skipZeros(String tag, int start) {
+        int i = start;
+        while (i < tag.length() && tag.charAt(i) == '0') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int endOfNumber(String tag, int start) {
+        int end = start;
+        while (end < tag.length() && isDigit(tag.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static long digitsValue(String tag, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + tag.charAt(i) - '0';
+        }
+        return value;
+    }
+
+    private static int chunks(int digits) {
+        return (digits + DIGITS_PER_CHUNK - 1) / DIGITS_PER_CHUNK;
+    }
+}
@@ -0,0 +1,192 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+// Keeps the tags last seen for each image and what changed since the poll
+// before, so that the latest tag for a filter can be updated from the added
+// tags alone. Only when the previous best tag has been removed, or a filter
+// has missed a change, is the latest tag looked up again, walking down
+// from the top of the image's TagIndex in the filter's ordering.
+//
+// The tags themselves are kept front coded in a TagIndex, which takes a
+// fraction of the memory of the strings for images with many tags.
+//
+// Materials often use the same image with different filters. When one of
+// them asks after a change, the filters that were up to date before it are
+// brought up to date too, in the same pass over the added tags, see FilterSet.
+// Filters that have missed a change are dropped from that until asked for
+// again, so that removed materials don't cost anything.
+class TagSetTracker {
+
+    private static class FilterBest {
+        final String tag;
+        final long generation;
+
+        FilterBest(String tag, long generation) {
+            this.tag = tag;
+            this.generation = generation;
+        }
+    }
+
+    private static class Filter {
+        final String filter;
+        final Pattern pattern;
+        final TagOrder order;
+
+        Filter(String filter, Pattern pattern, TagOrder order) {
+            this.filter = filter;
+            this.pattern = pattern;
+            this.order = order;
+        }
+    }
+
+    private static class ImageTags {
+        private TagIndex tags = TagIndex.empty();
+        private long generation = 0;
+        private List<String> added = Collections.emptyList();
+        private Set<String> removed = Collections.emptySet();
+        private final Map<String, FilterBest> bestByFilter = new HashMap<>();
+        private final Map<String, Filter> filters = new HashMap<>();
+
+        // The added and removed tags are only kept until the filters have
+        // been brought up to date with them, so that an image's tags are
+        // otherwise only held by its TagIndex. There are none for the first
+        // tags, every filter looks those up in the index.
+        synchronized TagIndex update(TagIndex currentTags) {
+            if (generation == 0) {
+                tags = currentTags;
+                generation++;
+                return tags;
+            }
+            List<String> currentAdded = new ArrayList<>();
+            Set<String> currentRemoved = new HashSet<>();
+            TagIndex.diff(tags, currentTags, currentRemoved::add, currentAdded::add);
+            if (currentAdded.isEmpty() && currentRemoved.isEmpty()) {
+                return tags;
+            }
+            tags = currentTags;
+            added = currentAdded;
+            removed = currentRemoved;
+            generation++;
+            return tags;
+        }
+
+        synchronized String latest(String filter, Pattern pattern, TagOrder order) {
+            String key = order.filterKey(filter);
+            FilterBest best = bestByFilter.get(key);
+            if (best != null && best.generation == generation) {
+                return best.tag;
+            }
+            filters.put(key, new Filter(filter, pattern, order));
+            FilterSet fromAdded = new FilterSet();
+            Iterator<Map.Entry<String, Filter>> entries = filters.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Filter> entry = entries.next();
+                Filter known = entry.getValue();
+                FilterBest knownBest = bestByFilter.get(entry.getKey());
+                boolean previousGeneration = knownBest != null && knownBest.generation == generation - 1;
+                if (previousGeneration && !removed.contains(knownBest.tag)) {
+                    fromAdded.add(entry.getKey(), known.filter, known.pattern, known.order, knownBest.tag);
+                } else if (previousGeneration || entry.getKey().equals(key)) {
+                    bestByFilter.put(entry.getKey(), new FilterBest(tags.latest(known.order, known.pattern), generation));
+                } else if (knownBest == null || knownBest.generation != generation) {
+                    entries.remove();
+                    bestByFilter.remove(entry.getKey());
+                }
+            }
+            if (!fromAdded.isEmpty()) {
+                added.forEach(fromAdded);
+                fromAdded.forEachLatest((filterKey, tag) -> bestByFilter.put(filterKey, new FilterBest(tag, generation)));
+            }
+            // Every filter that is left is up to date now.
+            added = Collections.emptyList();
+            removed = Collections.emptySet();
+            return bestByFilter.get(key).tag;
+        }
+
+        synchronized TagIndex tags() {
+            return tags;
+        }
+
+        synchronized int changedTags() {
+            return added.size() + removed.size();
+        }
+
+        synchronized void forEachLatest(BiConsumer<String, String> consumer) {
+            bestByFilter.forEach((key, best) -> {
+                if (best.generation == generation && best.tag != null) {
+                    consumer.accept(key, best.tag);
+                }
+            });
+        }
+    }
+
+    private final Map<String, ImageTags> images = new ConcurrentHashMap<>();
+
+    void update(String image, List<String> tags) {
+        update(image, TagIndex.of(tags));
+    }
+
+    // Returns the index that is kept for the image, which is the one it
+    // already had if the tags are unchanged.
+    TagIndex update(String image, TagIndex tags) {
+        return images.computeIfAbsent(image, key -> new ImageTags()).update(tags);
+    }
+
+    // Starts off an image with tags from before a restart, unless its tags
+    // have been fetched since.
+    void seed(String image, TagIndex tags) {
+        images.computeIfAbsent(image, key -> {
+            ImageTags imageTags = new ImageTags();
+            imageTags.update(tags);
+            return imageTags;
+        });
+    }
+
+    boolean contains(String image) {
+        return images.containsKey(image);
+    }
+
+    // The biggest tag of the image matching the pattern, or null if there is none.
+    String latest(String image, String filter, Pattern pattern) {
+        return latest(image, filter, pattern, TagOrder.NATURAL);
+    }
+
+    String latest(String image, String filter, Pattern pattern, TagOrder order) {
+        ImageTags imageTags = images.get(image);
+        return imageTags == null ? null : imageTags.latest(filter, pattern, order);
+    }
+
+    // The smallest tag of the image matching the pattern with a key above
+    // the given one, or null if there is none.
+    String after(String image, Pattern pattern, TagOrder order, long[] key) {
+        ImageTags imageTags = images.get(image);
+        return imageTags == null ? null : imageTags.tags().after(order, pattern, key);
+    }
+
+    // How many added and removed tags are kept for the image until its
+    // filters have been brought up to date.
+    int changedTags(String image) {
+        ImageTags imageTags = images.get(image);
+        return imageTags == null ? 0 : imageTags.changedTags();
+    }
+
+    // The latest tag of each filter that is up to date with the image's
+    // tags, by filter key. Filters without a matching tag are left out.
+    void forEachLatest(String image, BiConsumer<String, String> consumer) {
+        ImageTags imageTags = images.get(image);
+        if (imageTags != null) {
+            imageTags.forEachLatest(consumer);
+        }
+    }
+}
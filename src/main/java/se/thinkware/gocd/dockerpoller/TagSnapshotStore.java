@@ -0,0 +1,169 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps what we know about each image's tag list in a small binary file, so
+// that polls after a server restart can start with conditional requests
+// instead of fetching every tag list from scratch. That is the validators,
+// the latest tags and their manifest digests, and the front coded tags.
+//
+// The file is rewritten as a whole, at most once per save interval, through
+// a temporary file that is moved into place. Saves that are due are written
+// by the executor, so that polls don't wait for the disk.
+class TagSnapshotStore {
+
+    private static final Logger logger = Logger.getLoggerFor(TagSnapshotStore.class);
+
+    private static final int MAGIC = 0x44504f4c; // DPOL
+    static final int VERSION = 2;
+    static final Duration DEFAULT_SAVE_INTERVAL = Duration.ofSeconds(60);
+
+    private final Path file;
+    private final Duration saveInterval;
+    private final Clock clock;
+    private final Executor executor;
+    private final AtomicBoolean saving = new AtomicBoolean();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final Object writeLock = new Object();
+    private long written;
+    private Instant nextSave;
+
+    // This is used for testing, saves are written by the calling thread.
+    TagSnapshotStore(Path file) {
+        this(file, DEFAULT_SAVE_INTERVAL, Clock.systemUTC(), Runnable::run);
+    }
+
+    TagSnapshotStore(Path file, Duration saveInterval, Clock clock, Executor executor) {
+        this.file = file;
+        this.saveInterval = saveInterval;
+        this.clock = clock;
+        this.executor = executor;
+        this.nextSave = clock.instant();
+    }
+
+    // The store configured by system property, or null if there is none.
+    static TagSnapshotStore fromSystemProperties() {
+        String path = System.getProperty(Constants.SNAPSHOT_FILE_PROPERTY);
+        if (path == null || path.trim().isEmpty()) {
+            return null;
+        }
+        logger.info(String.format("Tag list snapshots are kept in %s", path));
+        return new TagSnapshotStore(
+                Paths.get(path.trim()),
+                DEFAULT_SAVE_INTERVAL,
+                Clock.systemUTC(),
+                Executors.newSingleThreadExecutor(RevisionPrefetcher.daemonThreads("docker-poller-snapshots"))
+        );
+    }
+
+    Map<String, TagListCache.Entry> load() {
+        Map<String, TagListCache.Entry> entries = new HashMap<>();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn(String.format("Ignoring tag list snapshots in unknown format in %s", file));
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = in.readUTF();
+                entries.put(url, TagListCache.Entry.readFrom(in));
+            }
+            logger.info(String.format("Loaded tag list snapshots for %d images from %s", count, file));
+        } catch (IOException | RuntimeException e) {
+            logger.warn(String.format("Could not load tag list snapshots from %s: %s", file, e.getMessage()));
+            entries.clear();
+        }
+        return entries;
+    }
+
+    // A save that is due while the one before is still being written is
+    // left to the next one.
+    synchronized void saveIfDue(Map<String, TagListCache.Entry> entries) {
+        Instant now = clock.instant();
+        if (now.isBefore(nextSave) || !saving.compareAndSet(false, true)) {
+            return;
+        }
+        nextSave = now.plus(saveInterval);
+        long number = snapshots.incrementAndGet();
+        Map<String, TagListCache.Entry> snapshot = new HashMap<>(entries);
+        try {
+            executor.execute(() -> {
+                try {
+                    write(number, snapshot);
+                } finally {
+                    saving.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            saving.set(false);
+        }
+    }
+
+    void save(Map<String, TagListCache.Entry> entries) {
+        write(snapshots.incrementAndGet(), new HashMap<>(entries));
+    }
+
+    // Writes are serialized on their own lock, so that saveIfDue doesn't
+    // wait for one, and a snapshot never replaces a newer one.
+    private void write(long number, Map<String, TagListCache.Entry> snapshot) {
+        synchronized (writeLock) {
+            if (number < written) {
+                return;
+            }
+            written = number;
+            writeFile(snapshot);
+        }
+    }
+
+    private void writeFile(Map<String, TagListCache.Entry> snapshot) {
+        Path temporary = null;
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, TagListCache.Entry> entry : snapshot.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().writeTo(out);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug(String.format("Saved tag list snapshots for %d images to %s", snapshot.size(), file));
+        } catch (IOException e) {
+            logger.warn(String.format("Could not save tag list snapshots to %s: %s", file, e.getMessage()));
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // Nothing reads the temporary files, it only takes up space.
+                }
+            }
+        }
+    }
+}
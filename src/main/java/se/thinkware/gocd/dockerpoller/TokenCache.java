@@ -0,0 +1,95 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps bearer tokens from registry token servers, so that we don't need to
+// fetch a new token for every request against a token protected registry.
+// Tokens are shared between all packages and are dropped a little while
+// before they expire.
+class TokenCache {
+
+    private static final Logger logger = Logger.getLoggerFor(TokenCache.class);
+
+    // The token spec says that a token without expires_in is valid for 60 seconds.
+    static final long DEFAULT_EXPIRES_IN_SECONDS = 60;
+    static final long EXPIRY_MARGIN_SECONDS = 10;
+
+    interface TokenSource {
+        TokenResponse fetch() throws IOException;
+    }
+
+    private static class CachedToken {
+        final String token;
+        final Instant renewAt;
+
+        CachedToken(String token, Instant renewAt) {
+            this.token = token;
+            this.renewAt = renewAt;
+        }
+    }
+
+    private final Map<List<String>, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final Clock clock;
+
+    TokenCache() {
+        this(Clock.systemUTC());
+    }
+
+    TokenCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    String getToken(String realm, String service, String scope, TokenSource source) throws IOException {
+        List<String> key = Arrays.asList(realm, service, scope);
+        Instant now = clock.instant();
+        CachedToken cached = tokens.get(key);
+        if (cached != null && now.isBefore(cached.renewAt)) {
+            return cached.token;
+        }
+
+        TokenResponse response = source.fetch();
+        String token = response.getToken();
+        if (token == null) {
+            throw new IOException(String.format("No token in response from %s", realm));
+        }
+        Instant renewAt = renewAt(response, now);
+        logger.debug(String.format("Caching token for %s until %s", key, renewAt));
+        tokens.put(key, new CachedToken(token, renewAt));
+        return token;
+    }
+
+    void invalidate(String realm, String service, String scope) {
+        tokens.remove(Arrays.asList(realm, service, scope));
+    }
+
+    private static Instant renewAt(TokenResponse response, Instant now) {
+        long expiresIn = DEFAULT_EXPIRES_IN_SECONDS;
+        if (response.getExpiresIn() != null && response.getExpiresIn() > 0) {
+            expiresIn = response.getExpiresIn();
+        }
+        Instant issuedAt = now;
+        if (response.getIssuedAt() != null) {
+            try {
+                // Don't trust an issue time from the future, the clocks might differ.
+                Instant serverIssuedAt = OffsetDateTime.parse(response.getIssuedAt()).toInstant();
+                if (serverIssuedAt.isBefore(now)) {
+                    issuedAt = serverIssuedAt;
+                }
+            } catch (DateTimeParseException e) {
+                logger.debug(String.format("Ignoring unparsable issued_at '%s'", response.getIssuedAt()));
+            }
+        }
+        long margin = Math.min(EXPIRY_MARGIN_SECONDS, expiresIn / 2);
+        return issuedAt.plusSeconds(expiresIn - margin);
+    }
+}
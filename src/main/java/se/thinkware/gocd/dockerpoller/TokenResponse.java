@@ -0,0 +1,35 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+
+// Response from a docker registry token server, see
+// https://docs.docker.com/registry/spec/auth/token/#token-response-fields
+class TokenResponse {
+
+    @SerializedName("token")
+    @Expose
+    private String token;
+    @SerializedName("access_token")
+    @Expose
+    private String accessToken;
+    @SerializedName("expires_in")
+    @Expose
+    private Long expiresIn;
+    @SerializedName("issued_at")
+    @Expose
+    private String issuedAt;
+
+    public String getToken() {
+        return token != null ? token : accessToken;
+    }
+
+    public Long getExpiresIn() {
+        return expiresIn;
+    }
+
+    public String getIssuedAt() {
+        return issuedAt;
+    }
+
+}
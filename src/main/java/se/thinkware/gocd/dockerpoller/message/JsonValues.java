@@ -0,0 +1,47 @@
+package se.thinkware.gocd.dockerpoller.message;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+// Null tolerant reads and writes for the hand written type adapters,
+// lenient in the same ways as Gson's own adapters for String and Boolean.
+final class JsonValues {
+
+    private JsonValues() {
+    }
+
+    static String nextString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    static Boolean nextBoolean(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    static void writeBoolean(JsonWriter out, Boolean value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else {
+            out.value(value.booleanValue());
+        }
+    }
+}
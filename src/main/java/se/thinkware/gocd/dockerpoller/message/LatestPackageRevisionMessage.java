@@ -15,9 +15,13 @@
  *************************GO-LICENSE-END***********************************/
 package se.thinkware.gocd.dockerpoller.message;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.util.Map;
 
 public class LatestPackageRevisionMessage {
@@ -37,4 +41,43 @@ public class LatestPackageRevisionMessage {
     public PackageMaterialProperties getPackageConfiguration() {
         return new PackageMaterialProperties(packageConfiguration);
     }
+
+    public static class JsonAdapter extends TypeAdapter<LatestPackageRevisionMessage> {
+
+        private final TypeAdapter<Map<String, PackageMaterialProperty>> propertiesAdapter;
+
+        public JsonAdapter(TypeAdapter<Map<String, PackageMaterialProperty>> propertiesAdapter) {
+            this.propertiesAdapter = propertiesAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, LatestPackageRevisionMessage message) throws IOException {
+            out.beginObject();
+            out.name("repository-configuration");
+            propertiesAdapter.write(out, message.repositoryConfiguration);
+            out.name("package-configuration");
+            propertiesAdapter.write(out, message.packageConfiguration);
+            out.endObject();
+        }
+
+        @Override
+        public LatestPackageRevisionMessage read(JsonReader in) throws IOException {
+            LatestPackageRevisionMessage message = new LatestPackageRevisionMessage();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "repository-configuration":
+                        message.repositoryConfiguration = propertiesAdapter.read(in);
+                        break;
+                    case "package-configuration":
+                        message.packageConfiguration = propertiesAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return message;
+        }
+    }
 }
@@ -15,9 +15,13 @@
  *************************GO-LICENSE-END***********************************/
 package se.thinkware.gocd.dockerpoller.message;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.util.Map;
 
 public class LatestPackageRevisionSinceMessage {
@@ -45,4 +49,53 @@ public class LatestPackageRevisionSinceMessage {
     public PackageRevisionMessage getPreviousRevision() {
         return previousRevision;
     }
+
+    public static class JsonAdapter extends TypeAdapter<LatestPackageRevisionSinceMessage> {
+
+        private final TypeAdapter<Map<String, PackageMaterialProperty>> propertiesAdapter;
+        private final TypeAdapter<PackageRevisionMessage> revisionAdapter;
+
+        public JsonAdapter(
+                TypeAdapter<Map<String, PackageMaterialProperty>> propertiesAdapter,
+                TypeAdapter<PackageRevisionMessage> revisionAdapter
+        ) {
+            this.propertiesAdapter = propertiesAdapter;
+            this.revisionAdapter = revisionAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, LatestPackageRevisionSinceMessage message) throws IOException {
+            out.beginObject();
+            out.name("repository-configuration");
+            propertiesAdapter.write(out, message.repositoryConfiguration);
+            out.name("package-configuration");
+            propertiesAdapter.write(out, message.packageConfiguration);
+            out.name("previous-revision");
+            revisionAdapter.write(out, message.previousRevision);
+            out.endObject();
+        }
+
+        @Override
+        public LatestPackageRevisionSinceMessage read(JsonReader in) throws IOException {
+            LatestPackageRevisionSinceMessage message = new LatestPackageRevisionSinceMessage();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "repository-configuration":
+                        message.repositoryConfiguration = propertiesAdapter.read(in);
+                        break;
+                    case "package-configuration":
+                        message.packageConfiguration = propertiesAdapter.read(in);
+                        break;
+                    case "previous-revision":
+                        message.previousRevision = revisionAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return message;
+        }
+    }
 }
@@ -1,7 +1,12 @@
 package se.thinkware.gocd.dockerpoller.message;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 public class PackageMaterialProperty {
     @Expose
@@ -79,4 +84,54 @@ public class PackageMaterialProperty {
     public String displayOrder() {
         return displayOrder;
     }
+
+    public static class JsonAdapter extends TypeAdapter<PackageMaterialProperty> {
+
+        @Override
+        public void write(JsonWriter out, PackageMaterialProperty property) throws IOException {
+            out.beginObject();
+            out.name("value").value(property.value);
+            out.name("secure");
+            JsonValues.writeBoolean(out, property.secure);
+            out.name("part-of-identity");
+            JsonValues.writeBoolean(out, property.partOfIdentity);
+            out.name("required");
+            JsonValues.writeBoolean(out, property.required);
+            out.name("display-name").value(property.displayName);
+            out.name("display-order").value(property.displayOrder);
+            out.endObject();
+        }
+
+        @Override
+        public PackageMaterialProperty read(JsonReader in) throws IOException {
+            PackageMaterialProperty property = new PackageMaterialProperty();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "value":
+                        property.value = JsonValues.nextString(in);
+                        break;
+                    case "secure":
+                        property.secure = JsonValues.nextBoolean(in);
+                        break;
+                    case "part-of-identity":
+                        property.partOfIdentity = JsonValues.nextBoolean(in);
+                        break;
+                    case "required":
+                        property.required = JsonValues.nextBoolean(in);
+                        break;
+                    case "display-name":
+                        property.displayName = JsonValues.nextString(in);
+                        break;
+                    case "display-order":
+                        property.displayOrder = JsonValues.nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return property;
+        }
+    }
 }
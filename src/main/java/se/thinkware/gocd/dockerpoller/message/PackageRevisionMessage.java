@@ -1,8 +1,13 @@
 package se.thinkware.gocd.dockerpoller.message;
 
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.Expose;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -24,6 +29,7 @@ public class PackageRevisionMessage {
     @Expose
     private String trackbackUrl;
 
+    @Expose
     private final Map<String, String> data = new HashMap<>();
 
     public PackageRevisionMessage() {
@@ -96,4 +102,76 @@ public class PackageRevisionMessage {
     public String getDataFor(String key) {
         return data.get(key);
     }
-}
\ No newline at end of file
+
+    public static class JsonAdapter extends TypeAdapter<PackageRevisionMessage> {
+
+        private final TypeAdapter<Date> dateAdapter;
+
+        public JsonAdapter(TypeAdapter<Date> dateAdapter) {
+            this.dateAdapter = dateAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, PackageRevisionMessage revision) throws IOException {
+            out.beginObject();
+            out.name("revision").value(revision.revision);
+            out.name("timestamp");
+            dateAdapter.write(out, revision.timestamp);
+            out.name("user").value(revision.user);
+            out.name("revisionComment").value(revision.revisionComment);
+            out.name("trackbackUrl").value(revision.trackbackUrl);
+            if (!revision.data.isEmpty()) {
+                out.name("data").beginObject();
+                for (Map.Entry<String, String> entry : revision.data.entrySet()) {
+                    out.name(entry.getKey()).value(entry.getValue());
+                }
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public PackageRevisionMessage read(JsonReader in) throws IOException {
+            PackageRevisionMessage revision = new PackageRevisionMessage();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "revision":
+                        revision.revision = JsonValues.nextString(in);
+                        break;
+                    case "timestamp":
+                        revision.timestamp = dateAdapter.read(in);
+                        break;
+                    case "user":
+                        revision.user = JsonValues.nextString(in);
+                        break;
+                    case "revisionComment":
+                        revision.revisionComment = JsonValues.nextString(in);
+                        break;
+                    case "trackbackUrl":
+                        revision.trackbackUrl = JsonValues.nextString(in);
+                        break;
+                    case "data":
+                        readData(in, revision);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return revision;
+        }
+
+        private static void readData(JsonReader in, PackageRevisionMessage revision) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                revision.addData(in.nextName(), JsonValues.nextString(in));
+            }
+            in.endObject();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTests {
+
+    private static class MovableClock extends Clock {
+        Instant now = Instant.parse("2018-01-01T12:00:00Z");
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    private final MovableClock clock = new MovableClock();
+
+    private final CircuitBreaker breaker = new CircuitBreaker("http://xxx:-1", 50, Duration.ofSeconds(30), clock);
+
+    private void request(boolean fail) throws CircuitOpenException {
+        breaker.beforeRequest();
+        if (fail) {
+            breaker.failed();
+        } else {
+            breaker.succeeded();
+        }
+    }
+
+    @Test
+    void opensOnFailureRateTest() throws CircuitOpenException {
+        for (int i = 0; i < 10; i++) {
+            request(false);
+        }
+        for (int i = 0; i < 9; i++) {
+            request(true);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        request(true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitOpenException.class, breaker::beforeRequest);
+    }
+
+    @Test
+    void needsSomeRequestsBeforeOpeningTest() throws CircuitOpenException {
+        for (int i = 1; i < CircuitBreaker.MIN_REQUESTS; i++) {
+            request(true);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        request(true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenLetsOneTrialThroughTest() throws CircuitOpenException {
+        for (int i = 0; i < CircuitBreaker.MIN_REQUESTS; i++) {
+            request(true);
+        }
+        clock.now = clock.now.plusSeconds(30);
+
+        breaker.beforeRequest();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        CircuitOpenException thrown = assertThrows(CircuitOpenException.class, breaker::beforeRequest);
+        assertFalse(thrown.getMessage().contains("seconds"));
+        assertTrue(thrown.getMessage().contains("a trial request is allowed"));
+        breaker.failed();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitOpenException.class, breaker::beforeRequest);
+
+        clock.now = clock.now.plusSeconds(30);
+        request(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        request(true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void unsentTrialLetsTheNextOneThroughTest() throws CircuitOpenException {
+        for (int i = 0; i < CircuitBreaker.MIN_REQUESTS; i++) {
+            request(true);
+        }
+        clock.now = clock.now.plusSeconds(30);
+
+        breaker.beforeRequest();
+        breaker.notSent();
+        request(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,45 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlineTests {
+
+    @Test
+    void noDeadlineTest() throws DeadlineExceededException {
+        assertEquals(Long.MAX_VALUE, Deadline.remainingMillis());
+        assertEquals(Long.MAX_VALUE, Deadline.check("anything"));
+    }
+
+    @Test
+    void earlierDeadlineWinsTest() {
+        long inner = Deadline.within(Duration.ofSeconds(10), () ->
+                Deadline.within(Duration.ofSeconds(60), Deadline::remainingMillis));
+        assertTrue(inner <= 10_000);
+
+        long outer = Deadline.within(Duration.ofSeconds(60), () -> {
+            Deadline.within(Duration.ofSeconds(10), Deadline::remainingMillis);
+            return Deadline.remainingMillis();
+        });
+        assertTrue(outer > 10_000);
+        assertEquals(Long.MAX_VALUE, Deadline.remainingMillis());
+    }
+
+    @Test
+    void expiredDeadlineTest() {
+        long remaining = Deadline.within(Duration.ZERO, Deadline::remainingMillis);
+        assertEquals(0, remaining);
+        boolean checked = Deadline.within(Duration.ZERO, () -> {
+            try {
+                Deadline.check("request");
+                return true;
+            } catch (DeadlineExceededException e) {
+                return false;
+            }
+        });
+        assertFalse(checked);
+    }
+}
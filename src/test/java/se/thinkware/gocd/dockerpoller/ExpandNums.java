@@ -0,0 +1,23 @@
+package se.thinkware.gocd.dockerpoller;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// The zero padding ordering that TagOrder.NATURAL replaced. It's kept as a
+// reference to check that the keys order tags the same way, and to compare
+// against in the benchmarks.
+class ExpandNums {
+
+    static String expandNums(String versionString) {
+        Pattern p = Pattern.compile("[0-9]+");
+        Matcher m = p.matcher(versionString);
+        StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            String match = String.format("%06d", Integer.parseInt(m.group()));
+
+            m.appendReplacement(sb, match);
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+}
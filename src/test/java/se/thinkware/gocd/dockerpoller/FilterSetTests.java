@@ -0,0 +1,83 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterSetTests {
+
+    private static void assertPrefix(String filter, String prefix, boolean complete) {
+        FilterPrefix filterPrefix = FilterPrefix.of(filter);
+        assertNotNull(filterPrefix, filter);
+        assertEquals(prefix, filterPrefix.getPrefix(), filter);
+        assertEquals(complete, filterPrefix.isComplete(), filter);
+    }
+
+    @Test
+    void literalPrefixTest() {
+        assertPrefix("^release-", "release-", true);
+        assertPrefix("^v2\\.", "v2.", true);
+        assertPrefix("^release-[0-9]+$", "release-", false);
+        assertPrefix("^v1\\.2\\.\\d+", "v1.2.", false);
+        assertPrefix("^abc?", "ab", false);
+        assertPrefix("^abc*", "ab", false);
+        assertPrefix("^ab{2}", "a", false);
+        assertPrefix("^ab+c", "ab", false);
+        assertPrefix("^nightly-(a|b)", "nightly-", false);
+
+        assertNull(FilterPrefix.of("release-"));
+        assertNull(FilterPrefix.of(".*"));
+        assertNull(FilterPrefix.of("^[0-9]"));
+        assertNull(FilterPrefix.of("^a?"));
+        assertNull(FilterPrefix.of("^release|^hotfix"));
+        assertNull(FilterPrefix.of("^\\d+"));
+    }
+
+    @Test
+    void sameResultAsOneFilterAtATimeTest() {
+        List<String> filters = Arrays.asList(
+                ".*", "^release-", "^release-1\\.", "^hotfix-[0-9]+$", "^nightly-", "-rc", "^release-|^hotfix-", "^1\\.", "^2");
+        List<String> tags = new ArrayList<>();
+        Random random = new Random(42);
+        String[] shapes = {"release-", "release-1.", "hotfix-", "nightly-", "", "2.", "1."};
+        for (int i = 0; i < 2000; i++) {
+            String tag = shapes[random.nextInt(shapes.length)] + random.nextInt(50) + "." + random.nextInt(20);
+            tags.add(random.nextInt(10) == 0 ? tag + "-rc" : tag);
+        }
+
+        FilterSet filterSet = new FilterSet();
+        for (String filter : filters) {
+            filterSet.add(filter, Pattern.compile(filter), null);
+        }
+        tags.forEach(filterSet);
+        Map<String, String> latest = new HashMap<>();
+        filterSet.forEachLatest(latest::put);
+
+        for (String filter : filters) {
+            LatestTagCollector collector = new LatestTagCollector(Pattern.compile(filter));
+            tags.forEach(collector);
+            assertEquals(collector.getLatest(), latest.get(filter), filter);
+        }
+    }
+
+    @Test
+    void startsFromKnownLatestTest() {
+        FilterSet filterSet = new FilterSet();
+        filterSet.add("^release-", Pattern.compile("^release-"), "release-5");
+        filterSet.add("^hotfix-", Pattern.compile("^hotfix-"), null);
+        Arrays.asList("release-3", "hotfix-1", "other").forEach(filterSet);
+
+        Map<String, String> latest = new HashMap<>();
+        filterSet.forEachLatest(latest::put);
+        assertEquals("release-5", latest.get("^release-"));
+        assertEquals("hotfix-1", latest.get("^hotfix-"));
+    }
+}
@@ -0,0 +1,99 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+import se.thinkware.gocd.dockerpoller.message.LatestPackageRevisionMessage;
+import se.thinkware.gocd.dockerpoller.message.LatestPackageRevisionSinceMessage;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
+import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.thinkware.gocd.dockerpoller.JsonUtil.fromJsonString;
+import static se.thinkware.gocd.dockerpoller.JsonUtil.toJsonString;
+
+class JsonUtilTests {
+
+    private final String since = "{"
+            + "\"repository-configuration\":{\"DOCKER_REGISTRY_URL\":{\"value\":\"http://xxx/v2/\"}},"
+            + "\"package-configuration\":{"
+            + "\"DOCKER_IMAGE\":{\"value\":\"my_docker\"},"
+            + "\"DOCKER_TAG_FILTER\":{\"value\":\"^1\",\"secure\":false,\"unknown\":[1,2]}"
+            + "},"
+            + "\"previous-revision\":{"
+            + "\"revision\":\"1.2\","
+            + "\"timestamp\":\"2018-01-02T03:04:05.678Z\","
+            + "\"data\":{\"DIGEST\":\"sha256:abc\"}"
+            + "}}";
+
+    @Test
+    void revisionToJsonTest() {
+        Date date = new Date(1514862245678L);
+        String timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US).format(date);
+        PackageRevisionMessage revision = new PackageRevisionMessage("1.2", date, "docker", null, null);
+
+        assertEquals(
+                "{\"revision\":\"1.2\",\"timestamp\":\"" + timestamp + "\",\"user\":\"docker\"}",
+                toJsonString(revision));
+    }
+
+    @Test
+    void propertiesToJsonTest() {
+        Map<String, PackageMaterialProperty> properties = new LinkedHashMap<>();
+        properties.put("DOCKER_IMAGE", new PackageMaterialProperty()
+                .withDisplayName("Docker Image")
+                .withDisplayOrder("0")
+                .withPartOfIdentity(true)
+                .withRequired(true));
+
+        assertEquals(
+                "{\"DOCKER_IMAGE\":{\"part-of-identity\":true,\"required\":true,"
+                        + "\"display-name\":\"Docker Image\",\"display-order\":\"0\"}}",
+                toJsonString(properties));
+    }
+
+    @Test
+    void latestRevisionFromJsonTest() {
+        LatestPackageRevisionMessage message = fromJsonString(since, LatestPackageRevisionMessage.class);
+
+        assertEquals("http://xxx/v2/", message.getRepositoryConfiguration().getProperty(Constants.DOCKER_REGISTRY_URL).value());
+        assertEquals("my_docker", message.getPackageConfiguration().getProperty(Constants.DOCKER_IMAGE).value());
+        assertEquals(false, message.getPackageConfiguration().getProperty(Constants.DOCKER_TAG_FILTER).secure());
+    }
+
+    @Test
+    void latestRevisionSinceFromJsonTest() throws Exception {
+        LatestPackageRevisionSinceMessage message = fromJsonString(since, LatestPackageRevisionSinceMessage.class);
+
+        assertEquals("^1", message.getPackageConfiguration().getProperty(Constants.DOCKER_TAG_FILTER).value());
+        PackageRevisionMessage previous = message.getPreviousRevision();
+        assertEquals("1.2", previous.getRevision());
+        assertEquals(
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US).parse("2018-01-02T03:04:05.678Z"),
+                previous.getTimestamp());
+        assertEquals(Collections.singletonMap("DIGEST", "sha256:abc"), previous.getData());
+    }
+
+    @Test
+    void tagsListFromJsonTest() {
+        DockerTagsList tags = fromJsonString("{\"name\":\"my_docker\",\"tags\":[\"1.1\",\"1.2\"]}", DockerTagsList.class);
+
+        assertEquals("my_docker", tags.getName());
+        assertEquals(java.util.Arrays.asList("1.1", "1.2"), tags.getTags());
+    }
+
+    @Test
+    void revisionDataToJsonTest() {
+        PackageRevisionMessage revision = new PackageRevisionMessage("1.2", null, "docker", null, null);
+        revision.addData("DIGEST", "sha256:abc");
+
+        assertEquals(
+                "{\"revision\":\"1.2\",\"user\":\"docker\",\"data\":{\"DIGEST\":\"sha256:abc\"}}",
+                toJsonString(revision));
+    }
+}
@@ -0,0 +1,114 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationListenerTests {
+
+    // Trimmed down from what a docker registry sends for a manifest push and a layer push.
+    private static final String REGISTRY_ENVELOPE = "{\"events\":[" +
+            "{\"id\":\"1\",\"action\":\"push\",\"target\":{" +
+            "\"mediaType\":\"application/vnd.docker.distribution.manifest.v2+json\"," +
+            "\"digest\":\"sha256:fc\",\"repository\":\"backends/database\",\"tag\":\"1.2.3\"}," +
+            "\"request\":{\"host\":\"registry:5000\",\"method\":\"PUT\"}}," +
+            "{\"id\":\"2\",\"action\":\"push\",\"target\":{" +
+            "\"mediaType\":\"application/octet-stream\",\"digest\":\"sha256:ab\",\"repository\":\"backends/database\"}}," +
+            "{\"id\":\"3\",\"action\":\"pull\",\"target\":{" +
+            "\"mediaType\":\"application/vnd.docker.distribution.manifest.v2+json\",\"repository\":\"backends/database\",\"tag\":\"1.2.3\"}}" +
+            "]}";
+
+    private static final String HARBOR_PAYLOAD = "{\"type\":\"PUSH_ARTIFACT\",\"occur_at\":1586922308," +
+            "\"operator\":\"admin\",\"event_data\":{\"resources\":[{\"digest\":\"sha256:fc\",\"tag\":\"1.2.3\"," +
+            "\"resource_url\":\"harbor/library/database:1.2.3\"}],\"repository\":{\"name\":\"database\"," +
+            "\"namespace\":\"library\",\"repo_full_name\":\"library/database\",\"repo_type\":\"private\"}}}";
+
+    private final List<RegistryNotifications.Event> events = new CopyOnWriteArrayList<>();
+
+    private NotificationListener listener;
+
+    @AfterEach
+    void stopListener() {
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    private int send(String method, String body) throws IOException {
+        return send(method, body, null);
+    }
+
+    private int send(String method, String body, String authorization) throws IOException {
+        URL url = new URL("http://localhost:" + listener.getPort() + NotificationListener.PATH);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/vnd.docker.distribution.events.v1+json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    @Test
+    void registryEnvelopeTest() throws IOException {
+        listener = new NotificationListener(null, 0, null, events::add);
+
+        assertEquals(200, send("POST", REGISTRY_ENVELOPE));
+
+        assertEquals(1, events.size());
+        assertEquals("push", events.get(0).getAction());
+        assertEquals("registry:5000", events.get(0).getRegistry());
+        assertEquals("backends/database", events.get(0).getRepository());
+        assertEquals("1.2.3", events.get(0).getTag());
+    }
+
+    @Test
+    void unexpectedRequestsTest() throws IOException {
+        listener = new NotificationListener(null, 0, null, events::add);
+
+        assertEquals(405, send("GET", null));
+        assertEquals(400, send("POST", "not json"));
+        assertEquals(400, send("POST", "{\"something\":\"else\"}"));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void secretTest() throws IOException {
+        listener = new NotificationListener("127.0.0.1", 0, "Bearer s3cret", events::add);
+
+        assertEquals(401, send("POST", REGISTRY_ENVELOPE));
+        assertEquals(401, send("POST", REGISTRY_ENVELOPE, "Bearer wrong"));
+        assertTrue(events.isEmpty());
+        assertEquals(200, send("POST", REGISTRY_ENVELOPE, "Bearer s3cret"));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void harborPayloadTest() {
+        List<RegistryNotifications.Event> parsed = RegistryNotifications.parse(HARBOR_PAYLOAD);
+
+        assertEquals(1, parsed.size());
+        assertEquals("push", parsed.get(0).getAction());
+        assertEquals("harbor", parsed.get(0).getRegistry());
+        assertEquals("library/database", parsed.get(0).getRepository());
+        assertEquals("1.2.3", parsed.get(0).getTag());
+        assertTrue(RegistryNotifications.parse("{\"type\":\"SCANNING_COMPLETED\",\"event_data\":{}}").isEmpty());
+    }
+}
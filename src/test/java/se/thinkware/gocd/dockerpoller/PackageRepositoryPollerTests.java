@@ -16,8 +16,16 @@ import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
 import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.regex.PatternSyntaxException;
 
@@ -95,6 +103,240 @@ class PackageRepositoryPollerTests {
         }
     };
 
+    private int tokenRequests = 0;
+    private int challenges = 0;
+
+    private final HttpTransport mockTransportTokenAuth = new MockHttpTransport() {
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    if (url.startsWith("http://auth/token")) {
+                        tokenRequests++;
+                        response.setStatusCode(200);
+                        response.setContentType("application/json");
+                        response.setContent("{\"token\":\"secret\",\"expires_in\":300}");
+                    } else if ("Bearer secret".equals(getFirstHeaderValue("Authorization"))) {
+                        response.setStatusCode(200);
+                        response.setContentType("application/json");
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.1\",\"1.2\"]}");
+                    } else {
+                        challenges++;
+                        response.setStatusCode(401);
+                        response.addHeader("WWW-Authenticate",
+                                "Bearer realm=\"http://auth/token\",service=\"registry\",scope=\"repository:my_docker:pull\"");
+                    }
+                    return response;
+                }
+            };
+        }
+    };
+
+    private final HttpTransport mockTransportPaginated = new MockHttpTransport() {
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    if (url.contains("/manifests/")) {
+                        response.setStatusCode(404);
+                        return response;
+                    }
+                    response.setStatusCode(200);
+                    response.setContentType("application/json");
+                    if (url.contains("last=1.2")) {
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.3\",\"1.10\"]}");
+                    } else {
+                        assertTrue(url.endsWith("?n=2"));
+                        response.addHeader("Link", "</v2/my_docker/tags/list?n=2&last=1.2>; rel=\"next\"");
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.1\",\"1.2\"]}");
+                    }
+                    return response;
+                }
+            };
+        }
+    };
+
+    private int fullTagResponses = 0;
+    private int manifestRequests = 0;
+
+    private int configRequests;
+
+    private int tagRequests;
+
+    private boolean registryDown;
+
+    private final List<String> tagListUrls = new ArrayList<>();
+
+    // Pages through the given tags like a registry, in the order they are
+    // given. A last parameter that isn't a tag starts at the first bigger tag.
+    private HttpTransport mockTransportLast(List<String> allTags) {
+        return new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+                return new MockLowLevelHttpRequest() {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                        if (url.contains("/manifests/")) {
+                            response.setStatusCode(404);
+                            return response;
+                        }
+                        tagListUrls.add(url);
+                        GenericUrl parsed = new GenericUrl(url);
+                        int n = Integer.parseInt((String) parsed.getFirst("n"));
+                        String last = (String) parsed.getFirst("last");
+                        List<String> page = new ArrayList<>();
+                        int start = allTags.indexOf(last) + 1;
+                        if (start == 0 && last != null) {
+                            while (start < allTags.size() && allTags.get(start).compareTo(last) <= 0) {
+                                start++;
+                            }
+                        }
+                        for (int i = start; i < allTags.size() && page.size() < n; i++) {
+                            page.add(allTags.get(i));
+                        }
+                        if (start + page.size() < allTags.size()) {
+                            response.addHeader("Link", "</v2/my_docker/tags/list?n=" + n + "&last=" + page.get(page.size() - 1) + ">; rel=\"next\"");
+                        }
+                        response.setStatusCode(200);
+                        response.setContentType("application/json");
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"" + String.join("\",\"", page) + "\"]}");
+                        return response;
+                    }
+                };
+            }
+        };
+    }
+
+    // Takes its time with the tag list.
+    private final HttpTransport mockTransportSlow = new MockHttpTransport() {
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    if (url.contains("/manifests/")) {
+                        manifestRequests++;
+                        response.setStatusCode(200);
+                        response.addHeader("Docker-Content-Digest", "sha256:1.2");
+                        return response;
+                    }
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    response.setStatusCode(200);
+                    response.setContentType("application/json");
+                    response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.1\",\"1.2\"]}");
+                    return response;
+                }
+            };
+        }
+    };
+
+    // Answers the first tag list request, then fails until the registry is back up.
+    private final HttpTransport mockTransportFailing = new MockHttpTransport() {
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    if (url.contains("/manifests/")) {
+                        manifestRequests++;
+                        response.setStatusCode(404);
+                        return response;
+                    }
+                    tagRequests++;
+                    if (registryDown) {
+                        response.setStatusCode(503);
+                        return response;
+                    }
+                    response.setStatusCode(200);
+                    response.setContentType("application/json");
+                    response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.1\",\"1.2\"]}");
+                    return response;
+                }
+            };
+        }
+    };
+
+    // Answers the first tag list request, then says to come back in an hour.
+    private final HttpTransport mockTransportRateLimited = new MockHttpTransport() {
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    if (url.contains("/manifests/")) {
+                        response.setStatusCode(404);
+                        return response;
+                    }
+                    if (tagRequests++ > 0) {
+                        response.setStatusCode(429);
+                        response.addHeader("Retry-After", "3600");
+                        return response;
+                    }
+                    response.setStatusCode(200);
+                    response.setContentType("application/json");
+                    response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.1\",\"1.2\"]}");
+                    return response;
+                }
+            };
+        }
+    };
+
+    private final HttpTransport mockTransportETag = new MockHttpTransport() {
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    if (url.contains("/manifests/sha256:")) {
+                        assertEquals("GET", method);
+                        configRequests++;
+                        response.setStatusCode(200);
+                        response.setContentType("application/vnd.docker.distribution.manifest.v2+json");
+                        response.setContent("{\"schemaVersion\":2,\"config\":{\"digest\":\"sha256:config\"}}");
+                        return response;
+                    }
+                    if (url.contains("/manifests/")) {
+                        assertEquals("HEAD", method);
+                        manifestRequests++;
+                        response.setStatusCode(200);
+                        response.addHeader("Docker-Content-Digest", "sha256:" + url.substring(url.lastIndexOf('/') + 1));
+                        return response;
+                    }
+                    if (url.endsWith("/blobs/sha256:config")) {
+                        configRequests++;
+                        response.setStatusCode(200);
+                        response.setContentType("application/octet-stream");
+                        response.setContent("{\"architecture\":\"amd64\",\"created\":\"2018-01-02T03:04:05.123456789Z\"}");
+                        return response;
+                    }
+                    if ("\"v1\"".equals(getFirstHeaderValue("If-None-Match"))) {
+                        response.setStatusCode(304);
+                        return response;
+                    }
+                    fullTagResponses++;
+                    response.setStatusCode(200);
+                    response.setContentType("application/json");
+                    response.addHeader("ETag", "\"v1\"");
+                    response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.1\",\"1.2\"]}");
+                    return response;
+                }
+            };
+        }
+    };
+
     @Test
     void RepositoryNotFoundTest() {
 
@@ -312,13 +554,6 @@ class PackageRepositoryPollerTests {
         assertEquals("1.11", dockerImage.getRevision());
     }
 
-    @Test
-    void expandNumsTest() {
-        String expected = "000123.000001-X";
-        String actual = PackageRepositoryPoller.expandNums("123.1-X");
-        assertEquals(expected, actual);
-    }
-
     @Test
     void getLatestSinceHitTest() {
 
@@ -383,5 +618,597 @@ class PackageRepositoryPollerTests {
         assertEquals(null, dockerImage.getRevision());
     }
 
-}
+    @Test
+    void getNextSinceTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportTags
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue(".*");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        PackageRevisionMessage dockerImage = poller.getLatestRevisionSince(
+                packageConfiguration,
+                repositoryConfiguration,
+                new PackageRevisionMessage("1.3", null, null, null, null)
+        );
+        assertEquals("1.11", dockerImage.getRevision());
+
+        dockerImage = poller.getLatestRevisionSince(
+                packageConfiguration,
+                repositoryConfiguration,
+                new PackageRevisionMessage("1.100", null, null, null, null)
+        );
+        assertEquals("1.100", dockerImage.getRevision());
+    }
+
+    @Test
+    void getLatestUsingTagOrderTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportTags
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue(".*");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+        PackageMaterialProperty order = new PackageMaterialProperty().withValue("lexicographic");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_ORDER, order);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        PackageRevisionMessage oldRev = new PackageRevisionMessage(
+                "1.23", null, null, null, null
+        );
+
+        PackageRevisionMessage dockerImage = poller.getLatestRevisionSince(
+                packageConfiguration,
+                repositoryConfiguration,
+                oldRev
+        );
+
+        assertEquals("1.3", dockerImage.getRevision());
+    }
+
+    @Test
+    void tokenIsReusedBetweenPollsTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportTokenAuth
+        );
+
+        GenericUrl url = new GenericUrl("http://xxx/v2/my_docker/tags/list");
+
+        assertEquals(Arrays.asList("1.1", "1.2"), poller.fetchTags(url));
+        assertEquals(Arrays.asList("1.1", "1.2"), poller.fetchTags(url));
+        assertEquals(1, tokenRequests);
+    }
+
+    @Test
+    void rememberedChallengeSkipsAnonymousRequestTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportTokenAuth
+        );
+
+        GenericUrl url = new GenericUrl("http://xxx/v2/my_docker/tags/list");
+
+        poller.fetchTags(url);
+        poller.fetchTags(url);
+        poller.fetchTags(url);
+        assertEquals(1, challenges);
+    }
 
+    @Test
+    void fetchTagsFollowsNextLinkTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportPaginated
+        );
+
+        GenericUrl url = new GenericUrl("http://xxx/v2/my_docker/tags/list?n=2");
+
+        assertEquals(Arrays.asList("1.1", "1.2", "1.3", "1.10"), poller.fetchTags(url));
+    }
+
+    @Test
+    void getLatestUsingPageSizeTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportPaginated
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty pageSize = new PackageMaterialProperty().withValue("2");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAGS_PAGE_SIZE, pageSize);
+
+        PackageRevisionMessage dockerImage = poller.getLatestRevision(
+                packageConfiguration,
+                repositoryConfiguration
+        );
+
+        assertEquals("1.10", dockerImage.getRevision());
+    }
+
+    @Test
+    void getLatestReusesRevisionWhenNotModifiedTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportETag
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue(".*");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        assertEquals("1.2", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals("1.2", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals(1, fullTagResponses);
+
+        PackageMaterialProperty otherFilter = new PackageMaterialProperty().withValue("1$");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, otherFilter);
+        assertEquals("1.1", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals(1, fullTagResponses);
+    }
+
+    @Test
+    void changedTagListKeepsLatestOfAllFiltersTest() {
+        List<String> tags = new ArrayList<>(Arrays.asList("1.1", "1.2"));
+        HttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+                return new MockLowLevelHttpRequest() {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                        if (!url.endsWith("/tags/list")) {
+                            response.setStatusCode(404);
+                            return response;
+                        }
+                        String etag = "\"v" + tags.size() + "\"";
+                        if (etag.equals(getFirstHeaderValue("If-None-Match"))) {
+                            response.setStatusCode(304);
+                            return response;
+                        }
+                        fullTagResponses++;
+                        response.setStatusCode(200);
+                        response.setContentType("application/json");
+                        response.addHeader("ETag", etag);
+                        response.setContent("{\"name\":\"my_docker\",\"tags\":[\"" + String.join("\",\"", tags) + "\"]}");
+                        return response;
+                    }
+                };
+            }
+        };
+        TagListCache cache = new TagListCache();
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(), transport, cache);
+
+        PackageMaterialProperties all = new PackageMaterialProperties();
+        all.addPackageMaterialProperty(Constants.DOCKER_IMAGE, new PackageMaterialProperty().withValue("my_docker"));
+        all.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue(".*"));
+        PackageMaterialProperties endsWith1 = new PackageMaterialProperties();
+        endsWith1.addPackageMaterialProperty(Constants.DOCKER_IMAGE, new PackageMaterialProperty().withValue("my_docker"));
+        endsWith1.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue("1$"));
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        repositoryConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_REGISTRY_URL, new PackageMaterialProperty().withValue("http://xxx/v2/"));
+
+        assertEquals("1.2", poller.getLatestRevision(all, repositoryConfiguration).getRevision());
+        assertEquals("1.1", poller.getLatestRevision(endsWith1, repositoryConfiguration).getRevision());
+        assertEquals(1, fullTagResponses);
+
+        tags.add("2.1");
+        assertEquals("2.1", poller.getLatestRevision(all, repositoryConfiguration).getRevision());
+        assertEquals("2.1", cache.get("http://xxx/v2/my_docker/tags/list").getLatest("1$"));
+        assertEquals("2.1", poller.getLatestRevision(endsWith1, repositoryConfiguration).getRevision());
+        assertEquals(2, fullTagResponses);
+    }
+
+    @Test
+    void streamTagsTest() throws IOException {
+        List<String> tags = new ArrayList<>();
+        String json = "{\"name\":\"my_docker\",\"extra\":{\"tags\":[\"x\"]},\"tags\":[\"1.1\",null,\"1.2\"]}";
+
+        int count = DockerTagsList.forEachTag(new StringReader(json), tags::add);
+
+        assertEquals(2, count);
+        assertEquals(Arrays.asList("1.1", "1.2"), tags);
+        assertEquals(0, DockerTagsList.forEachTag(new StringReader("{\"name\":\"my_docker\",\"tags\":null}"), tags::add));
+    }
+
+    @Test
+    void snapshotsSurviveRestartTest() throws IOException {
+        Path snapshots = Files.createTempFile("tag-snapshots", ".bin");
+        try {
+            PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+            PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+            packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+            PackageMaterialProperty filter = new PackageMaterialProperty().withValue(".*");
+            packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+            PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+            PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+            repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+            TagListCache beforeCache = new TagListCache(new TagSnapshotStore(snapshots));
+            PackageRepositoryPoller before = new PackageRepositoryPoller(
+                    new PackageRepositoryConfigurationProvider(),
+                    mockTransportETag,
+                    beforeCache
+            );
+            assertEquals("1.2", before.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+            // As on shutdown, with the manifest digest that was found after the first save.
+            beforeCache.save();
+            assertEquals(1, manifestRequests);
+
+            PackageRepositoryPoller after = new PackageRepositoryPoller(
+                    new PackageRepositoryConfigurationProvider(),
+                    mockTransportETag,
+                    new TagListCache(new TagSnapshotStore(snapshots))
+            );
+            PackageRevisionMessage revision = after.getLatestRevision(packageConfiguration, repositoryConfiguration);
+            assertEquals("1.2", revision.getRevision());
+            assertEquals("sha256:1.2", revision.getDataFor(Constants.DIGEST_DATA_KEY));
+            assertEquals(1, manifestRequests);
+
+            // The tags came with the snapshot, so a new filter gets a 304 too.
+            PackageMaterialProperty otherFilter = new PackageMaterialProperty().withValue("1$");
+            packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, otherFilter);
+            assertEquals("1.1", after.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+            assertEquals(1, fullTagResponses);
+        } finally {
+            Files.deleteIfExists(snapshots);
+        }
+    }
+
+    @Test
+    void getLatestAddsManifestDigestTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportETag
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue(".*");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        PackageRevisionMessage first = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        PackageRevisionMessage second = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+
+        assertEquals("sha256:1.2", first.getDataFor(Constants.DIGEST_DATA_KEY));
+        assertEquals("sha256:1.2", second.getDataFor(Constants.DIGEST_DATA_KEY));
+        assertEquals(1, manifestRequests);
+    }
+
+    @Test
+    void getLatestUsesImageCreationTimeTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportETag
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue(".*");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        Date created = Date.from(Instant.parse("2018-01-02T03:04:05.123Z"));
+        assertEquals(created, poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getTimestamp());
+        assertEquals(2, configRequests);
+
+        PackageMaterialProperty otherFilter = new PackageMaterialProperty().withValue("1$");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, otherFilter);
+        PackageRevisionMessage other = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        assertEquals("1.1", other.getRevision());
+        assertEquals(created, other.getTimestamp());
+        // A new manifest, but the config blob is already known.
+        assertEquals(3, configRequests);
+    }
+
+    @Test
+    void missingImageCreationTimeIsRememberedTest() throws IOException {
+        HttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+                return new MockLowLevelHttpRequest() {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                        if (url.contains("/manifests/sha256:")) {
+                            configRequests++;
+                            // A manifest without a config blob, like schema 1.
+                            response.setStatusCode(200);
+                            response.setContentType("application/vnd.docker.distribution.manifest.v1+prettyjws");
+                            response.setContent("{\"schemaVersion\":1,\"name\":\"my_docker\",\"tag\":\"1.2\"}");
+                        } else if (url.contains("/manifests/")) {
+                            response.setStatusCode(200);
+                            response.addHeader("Docker-Content-Digest", "sha256:" + url.substring(url.lastIndexOf('/') + 1));
+                        } else {
+                            response.setStatusCode(200);
+                            response.setContentType("application/json");
+                            response.setContent("{\"name\":\"my_docker\",\"tags\":[\"1.1\",\"1.2\"]}");
+                        }
+                        return response;
+                    }
+                };
+            }
+        };
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(new PackageRepositoryConfigurationProvider(), transport);
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, new PackageMaterialProperty().withValue("my_docker"));
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue(".*"));
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        repositoryConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_REGISTRY_URL, new PackageMaterialProperty().withValue("http://xxx/v2/"));
+
+        assertEquals("1.2", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals("1.2", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertNull(poller.getImageCreated(packageConfiguration, repositoryConfiguration, "sha256:1.2"));
+        assertEquals(1, configRequests);
+    }
+
+    @Test
+    void imageChangedForgetsManifestDigestsTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportETag
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue(".*");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        poller.imageChanged(new RegistryNotifications.Event("push", "xxx", "other_docker", "1.2"));
+        poller.imageChanged(new RegistryNotifications.Event("push", "xxx", "org/my_docker", "1.2"));
+        poller.imageChanged(new RegistryNotifications.Event("push", "other", "my_docker", "1.2"));
+        poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        assertEquals(1, manifestRequests);
+
+        // The tag list is unchanged, but the tag may point at another image now.
+        poller.imageChanged(new RegistryNotifications.Event("push", "xxx:80", "my_docker", "1.2"));
+        poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        assertEquals(2, manifestRequests);
+
+        poller.imageChanged(new RegistryNotifications.Event("push", null, "my_docker", "1.2"));
+        poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        assertEquals(3, manifestRequests);
+    }
+
+    @Test
+    void rateLimitedPollUsesKnownTagsTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportRateLimited
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue(".*");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        assertEquals("1.2", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals("1.2", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        // No more requests until the hour has passed.
+        assertEquals("1.2", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        assertEquals(2, tagRequests);
+    }
+
+    @Test
+    void openCircuitUsesKnownTagsTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportFailing
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue(".*");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        assertEquals("1.2", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+
+        registryDown = true;
+        assertNull(poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        for (int i = 0; i < CircuitBreaker.MIN_REQUESTS; i++) {
+            poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        }
+
+        // Once the breaker is open, the registry is left alone.
+        int requestsWhenOpened = tagRequests;
+        for (int i = 0; i < 3; i++) {
+            assertEquals("1.2", poller.getLatestRevision(packageConfiguration, repositoryConfiguration).getRevision());
+        }
+        assertEquals(requestsWhenOpened, tagRequests);
+
+        PackageMaterialProperty name = new PackageMaterialProperty().withValue("registry/name");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_NAME, name);
+        CheckConnectionResultMessage status = poller.checkConnectionToRepository(repositoryConfiguration);
+        assertFalse(status.success());
+        assertTrue(status.getMessages().contains("Circuit breaker for xxx is OPEN."));
+    }
+
+    @Test
+    void openCircuitKeepsKnownRevisionTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportFailing
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue("1$");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        PackageRevisionMessage known = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        assertEquals("1.1", known.getRevision());
+
+        registryDown = true;
+        for (int i = 0; i <= CircuitBreaker.MIN_REQUESTS; i++) {
+            poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        }
+
+        // Once the breaker is open, the revision we had is kept as it was,
+        // and the manifest isn't asked for.
+        int manifestRequestsWhenOpened = manifestRequests;
+        PackageRevisionMessage revision = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+        assertEquals("1.1", revision.getRevision());
+        assertEquals(known.getTimestamp(), revision.getTimestamp());
+        assertEquals(manifestRequestsWhenOpened, manifestRequests);
+
+        // Another filter has no revision yet, and one with a made up
+        // timestamp would look like a new image.
+        packageConfiguration.addPackageMaterialProperty(
+                Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue(".*"));
+        UncheckedIOException thrown = assertThrows(UncheckedIOException.class,
+                () -> poller.getLatestRevision(packageConfiguration, repositoryConfiguration));
+        assertTrue(thrown.getCause() instanceof CircuitOpenException);
+        assertEquals(manifestRequestsWhenOpened, manifestRequests);
+    }
+
+    @Test
+    void workStopsAtDeadlineTest() {
+
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                mockTransportSlow
+        );
+        poller.setRequestDeadline(Duration.ofMillis(100));
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue(".*");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+
+        PackageRevisionMessage revision = poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+
+        // The tags arrived after the deadline, so the digest wasn't asked for.
+        assertEquals("1.2", revision.getRevision());
+        assertNull(revision.getDataFor(Constants.DIGEST_DATA_KEY));
+        assertEquals(0, manifestRequests);
+    }
+
+    private PackageRevisionMessage latestWithPageSize(HttpTransport transport, String tagFilter) {
+        PackageRepositoryPoller poller = new PackageRepositoryPoller(
+                new PackageRepositoryConfigurationProvider(),
+                transport
+        );
+
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty image = new PackageMaterialProperty().withValue("my_docker");
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, image);
+        PackageMaterialProperty filter = new PackageMaterialProperty().withValue(tagFilter);
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, filter);
+
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        PackageMaterialProperty url = new PackageMaterialProperty().withValue("http://xxx/v2/");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, url);
+        PackageMaterialProperty pageSize = new PackageMaterialProperty().withValue("2");
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAGS_PAGE_SIZE, pageSize);
+
+        return poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+    }
+
+    @Test
+    void filterPrefixStartsAndEndsPaginationTest() {
+        HttpTransport transport = mockTransportLast(Arrays.asList(
+                "a-1", "b-1", "release-1", "release-2", "release-3", "z-1", "z-2", "z-3", "z-4"));
+
+        assertEquals("release-3", latestWithPageSize(transport, "^release-[0-9]+$").getRevision());
+
+        assertEquals(2, tagListUrls.size());
+        assertTrue(tagListUrls.get(0).endsWith("?n=2&last=release,"), tagListUrls.get(0));
+    }
+
+    @Test
+    void unsortedTagListsAreListedFullyTest() {
+        HttpTransport transport = mockTransportLast(Arrays.asList(
+                "release-2", "release-1", "release-3", "z-1", "a-1"));
+
+        assertEquals("release-3", latestWithPageSize(transport, "^release-").getRevision());
+
+        assertTrue(tagListUrls.get(0).endsWith("&last=release,"));
+        assertTrue(tagListUrls.get(1).endsWith("?n=2"));
+        assertEquals(4, tagListUrls.size());
+    }
+
+}
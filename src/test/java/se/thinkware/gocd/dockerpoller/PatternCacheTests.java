@@ -0,0 +1,38 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatternCacheTests {
+
+    @Test
+    void reusesCompiledPatternTest() {
+        PatternCache cache = new PatternCache();
+        assertSame(cache.compile("^release-.*"), cache.compile("^release-.*"));
+    }
+
+    @Test
+    void remembersInvalidPatternTest() {
+        PatternCache cache = new PatternCache();
+        PatternSyntaxException first = assertThrows(PatternSyntaxException.class, () -> cache.compile("*.bad"));
+        PatternSyntaxException second = assertThrows(PatternSyntaxException.class, () -> cache.compile("*.bad"));
+        assertSame(first, second);
+    }
+
+    @Test
+    void dropsLeastRecentlyUsedTest() {
+        PatternCache cache = new PatternCache(2);
+        Pattern a = cache.compile("a");
+        Pattern b = cache.compile("b");
+        cache.compile("a");
+        Pattern c = cache.compile("c");
+        assertEquals(2, cache.size());
+        assertSame(a, cache.compile("a"));
+        assertSame(c, cache.compile("c"));
+        assertNotSame(b, cache.compile("b"));
+    }
+}
@@ -0,0 +1,102 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.HttpHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTests {
+
+    private static class MovableClock extends Clock {
+        Instant now = Instant.parse("2018-01-01T12:00:00Z");
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    private final MovableClock clock = new MovableClock();
+
+    private long slept;
+
+    private final RateLimiter rateLimiter = new RateLimiter("http://xxx:-1", Duration.ofSeconds(10), clock, millis -> {
+        slept += millis;
+        clock.now = clock.now.plusMillis(millis);
+    });
+
+    @Test
+    void requestsPerMinuteTest() throws IOException {
+        rateLimiter.setRequestsPerMinute(60);
+        for (int i = 0; i < 60; i++) {
+            rateLimiter.acquire();
+        }
+        assertEquals(0, slept);
+
+        rateLimiter.acquire();
+        rateLimiter.acquire();
+        assertEquals(2000, slept);
+    }
+
+    @Test
+    void noLimitByDefaultTest() throws IOException {
+        for (int i = 0; i < 1000; i++) {
+            rateLimiter.acquire();
+        }
+        assertEquals(0, slept);
+    }
+
+    @Test
+    void retryAfterTest() throws IOException {
+        rateLimiter.update(429, new HttpHeaders().setRetryAfter("5"));
+        rateLimiter.acquire();
+        assertEquals(5000, slept);
+
+        rateLimiter.update(429, new HttpHeaders());
+        assertThrows(RateLimitedException.class, rateLimiter::acquire);
+        clock.now = clock.now.plus(RateLimiter.DEFAULT_RETRY_AFTER);
+        rateLimiter.acquire();
+        assertEquals(5000, slept);
+    }
+
+    @Test
+    void rateLimitHeadersTest() throws IOException {
+        rateLimiter.update(200, new HttpHeaders().set("RateLimit-Remaining", "1").set("RateLimit-Reset", "30"));
+        rateLimiter.acquire();
+        assertEquals(0, slept);
+
+        rateLimiter.update(200, new HttpHeaders().set("RateLimit-Remaining", "0").set("RateLimit-Reset", "30"));
+        assertThrows(RateLimitedException.class, rateLimiter::acquire);
+
+        // Docker Hub doesn't say when the window resets.
+        RateLimiter hub = new RateLimiter("https://registry-1.docker.io:443");
+        hub.update(200, new HttpHeaders().set("RateLimit-Remaining", "0;w=21600"));
+        hub.acquire();
+    }
+
+    @Test
+    void retryAfterValuesTest() {
+        long now = Instant.parse("2015-10-21T07:28:00Z").toEpochMilli();
+        assertEquals(Duration.ofSeconds(120), RateLimiter.retryAfter("120", now));
+        assertEquals(Duration.ofSeconds(60), RateLimiter.retryAfter("Wed, 21 Oct 2015 07:29:00 GMT", now));
+        assertNull(RateLimiter.retryAfter("soon", now));
+        assertEquals(Long.valueOf(100), RateLimiter.leadingNumber("100;w=21600"));
+    }
+}
@@ -0,0 +1,51 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefreshBackoffTests {
+
+    private static final long MINUTE = 60_000;
+
+    @Test
+    void quietMaterialsBackOffUpToCapTest() {
+        RefreshBackoff backoff = new RefreshBackoff(MINUTE, 10 * MINUTE);
+        assertEquals(MINUTE, backoff.delayMillis());
+
+        long now = 0;
+        for (long expected : new long[]{2 * MINUTE, 4 * MINUTE, 8 * MINUTE, 10 * MINUTE, 10 * MINUTE}) {
+            now += backoff.delayMillis();
+            backoff.refreshed(false, now);
+            assertEquals(expected, backoff.delayMillis());
+        }
+
+        backoff.refreshed(true, now);
+        assertEquals(MINUTE, backoff.delayMillis());
+    }
+
+    @Test
+    void busyMaterialsStayBelowTimeBetweenChangesTest() {
+        RefreshBackoff backoff = new RefreshBackoff(MINUTE, 60 * MINUTE);
+        backoff.refreshed(true, 0);
+        backoff.refreshed(true, 6 * MINUTE);
+        for (int i = 0; i < 10; i++) {
+            backoff.refreshed(false, (7 + i) * MINUTE);
+        }
+        assertEquals(3 * MINUTE, backoff.delayMillis());
+
+        // Changes that are further apart let the delay grow again.
+        backoff.refreshed(true, 86 * MINUTE);
+        backoff.refreshed(false, 87 * MINUTE);
+        backoff.refreshed(false, 89 * MINUTE);
+        backoff.refreshed(false, 93 * MINUTE);
+        assertEquals(8 * MINUTE, backoff.delayMillis());
+    }
+
+    @Test
+    void capBelowBaseIntervalTest() {
+        RefreshBackoff backoff = new RefreshBackoff(MINUTE, 0);
+        backoff.refreshed(false, MINUTE);
+        assertEquals(MINUTE, backoff.delayMillis());
+    }
+}
@@ -0,0 +1,73 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.testing.http.MockHttpTransport;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegistryConnectionPoolTests {
+
+    private final GenericUrl registry = new GenericUrl("https://registry/v2/my_docker/tags/list");
+    private final GenericUrl other = new GenericUrl("https://other:443/v2/");
+    private final RegistryConnectionPool pool = new RegistryConnectionPool(new MockHttpTransport(), 3, 2);
+
+    private void acquireWithin(GenericUrl url, long millis) {
+        Deadline.within(Duration.ofMillis(millis), () -> {
+            try {
+                pool.acquire(url);
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void assertNoConnection(GenericUrl url) {
+        UncheckedIOException thrown = assertThrows(UncheckedIOException.class, () -> acquireWithin(url, 50));
+        assertTrue(thrown.getCause() instanceof DeadlineExceededException);
+    }
+
+    @Test
+    void limitsEachRegistryAndTotalTest() {
+        acquireWithin(registry, 50);
+        acquireWithin(registry, 50);
+        assertNoConnection(registry);
+        assertEquals(2, pool.inUse(registry));
+
+        acquireWithin(other, 50);
+        assertNoConnection(other);
+        assertEquals(1, pool.inUse(other));
+
+        pool.release(registry);
+        acquireWithin(registry, 50);
+        assertEquals(2, pool.inUse(registry));
+    }
+
+    @Test
+    void changedLimitAppliesRightAwayTest() {
+        acquireWithin(registry, 50);
+        acquireWithin(registry, 50);
+        assertNoConnection(registry);
+
+        pool.setMaxConnections(registry, 3);
+        acquireWithin(registry, 50);
+        assertEquals(3, pool.inUse(registry));
+
+        pool.setMaxConnections(registry, 1);
+        pool.release(registry);
+        pool.release(registry);
+        assertNoConnection(registry);
+        pool.release(registry);
+        acquireWithin(registry, 50);
+
+        // Back to the default of 2.
+        pool.setMaxConnections(registry, 0);
+        acquireWithin(registry, 50);
+        assertNoConnection(registry);
+    }
+}
@@ -0,0 +1,61 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegistrySettingsTests {
+
+    private static final String REGISTRY = "https://registry:-1";
+
+    @Test
+    void appliesFirstLimitsTest() {
+        RegistrySettings settings = new RegistrySettings();
+        RegistrySettings.Limits limits = settings.update(REGISTRY, "one", new RegistrySettings.Limits(4, 60));
+        assertEquals(4, limits.maxConnections);
+        assertEquals(60, limits.requestsPerMinute);
+    }
+
+    @Test
+    void unchangedLimitsAreNotAppliedAgainTest() {
+        RegistrySettings settings = new RegistrySettings();
+        settings.update(REGISTRY, "one", new RegistrySettings.Limits(4, 60));
+        assertNull(settings.update(REGISTRY, "one", new RegistrySettings.Limits(4, 60)));
+    }
+
+    @Test
+    void repositoriesOnSameRegistryKeepStrictestTest() {
+        RegistrySettings settings = new RegistrySettings();
+        settings.update(REGISTRY, "one", new RegistrySettings.Limits(4, 60));
+        RegistrySettings.Limits limits = settings.update(REGISTRY, "two", new RegistrySettings.Limits(8, 30));
+        assertEquals(4, limits.maxConnections);
+        assertEquals(30, limits.requestsPerMinute);
+        // Polling either repository again must not reset the other's limit.
+        assertNull(settings.update(REGISTRY, "one", new RegistrySettings.Limits(4, 60)));
+        assertNull(settings.update(REGISTRY, "two", new RegistrySettings.Limits(8, 30)));
+    }
+
+    @Test
+    void noLimitDoesNotLiftOthersTest() {
+        RegistrySettings settings = new RegistrySettings();
+        settings.update(REGISTRY, "one", new RegistrySettings.Limits(0, 60));
+        assertNull(settings.update(REGISTRY, "two", new RegistrySettings.Limits(0, 0)));
+    }
+
+    @Test
+    void changedRepositoryLimitIsAppliedTest() {
+        RegistrySettings settings = new RegistrySettings();
+        settings.update(REGISTRY, "one", new RegistrySettings.Limits(0, 60));
+        settings.update(REGISTRY, "two", new RegistrySettings.Limits(0, 30));
+        RegistrySettings.Limits limits = settings.update(REGISTRY, "two", new RegistrySettings.Limits(0, 0));
+        assertEquals(60, limits.requestsPerMinute);
+    }
+
+    @Test
+    void registriesAreSeparateTest() {
+        RegistrySettings settings = new RegistrySettings();
+        settings.update(REGISTRY, "one", new RegistrySettings.Limits(0, 60));
+        RegistrySettings.Limits limits = settings.update("https://other:-1", "two", new RegistrySettings.Limits(0, 0));
+        assertEquals(0, limits.requestsPerMinute);
+    }
+}
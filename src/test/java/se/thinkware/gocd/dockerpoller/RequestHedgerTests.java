@@ -0,0 +1,165 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestHedgerTests {
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    // The first request takes a second, the others are quick.
+    private final HttpTransport slowFirstTransport = new MockHttpTransport() {
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+            return new MockLowLevelHttpRequest() {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    MockLowLevelHttpResponse response = new MockLowLevelHttpResponse();
+                    if (requests.incrementAndGet() == 1) {
+                        try {
+                            Thread.sleep(1000);
+                        } catch (InterruptedException e) {
+                            throw new InterruptedIOException();
+                        }
+                        response.setContent("slow");
+                    } else {
+                        response.setContent("quick");
+                    }
+                    return response;
+                }
+            };
+        }
+    };
+
+    private final HttpRequestFactory requestFactory = slowFirstTransport.createRequestFactory();
+
+    private HttpRequest get() throws IOException {
+        return requestFactory.buildGetRequest(new GenericUrl("http://xxx/v2/my_docker/tags/list"));
+    }
+
+    @Test
+    void percentileTest() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 1; i < LatencyTracker.MIN_SAMPLES; i++) {
+            tracker.record(i);
+        }
+        assertEquals(-1, tracker.percentile(95));
+        for (int i = LatencyTracker.MIN_SAMPLES; i <= LatencyTracker.SAMPLES + 50; i++) {
+            tracker.record(i);
+        }
+        assertEquals(145, tracker.percentile(95));
+        assertEquals(51, tracker.percentile(1));
+    }
+
+    @Test
+    void slowRequestIsHedgedTest() throws IOException {
+        RequestHedger hedger = new RequestHedger(95);
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            hedger.latenciesOf("registry").record(10);
+        }
+
+        long start = System.nanoTime();
+        HttpResponse response = hedger.execute("registry", get(), this::get, () -> true);
+
+        assertEquals("quick", response.parseAsString());
+        assertTrue(System.nanoTime() - start < 900_000_000L);
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void losingRequestIsAbortedTest() throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        RequestHedger hedger = new RequestHedger(95, executor);
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            hedger.latenciesOf("registry").record(10);
+        }
+
+        assertEquals("quick", hedger.execute("registry", get(), this::get, () -> true).parseAsString());
+
+        // The slow one doesn't wait out its second.
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void noHedgeWithoutHistoryTest() throws IOException {
+        RequestHedger hedger = new RequestHedger(95);
+
+        assertEquals("slow", hedger.execute("registry", get(), this::get, () -> true).parseAsString());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void quickResponseNeedsNoPermitTest() throws IOException {
+        RequestHedger hedger = new RequestHedger(95);
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            hedger.latenciesOf("registry").record(5000);
+        }
+        requests.incrementAndGet();
+        AtomicInteger permits = new AtomicInteger();
+
+        HttpResponse response = hedger.execute("registry", get(), this::get, () -> permits.incrementAndGet() > 0);
+
+        assertEquals("quick", response.parseAsString());
+        assertEquals(0, permits.get());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void hedgingStopsAtDeadlineTest() {
+        RequestHedger hedger = new RequestHedger(95);
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            hedger.latenciesOf("registry").record(10);
+        }
+
+        // No copy may be sent, and the first one is too slow.
+        UncheckedIOException thrown = assertThrows(UncheckedIOException.class, () -> Deadline.within(Duration.ofMillis(100), () -> {
+            try {
+                return hedger.execute("registry", get(), this::get, () -> false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+        assertTrue(thrown.getCause() instanceof DeadlineExceededException);
+    }
+
+    @Test
+    void requestIsAbortedAtDeadlineTest() throws InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        RequestHedger hedger = new RequestHedger(95, executor);
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            hedger.latenciesOf("registry").record(10);
+        }
+
+        assertThrows(UncheckedIOException.class, () -> Deadline.within(Duration.ofMillis(100), () -> {
+            try {
+                return hedger.execute("registry", get(), this::get, () -> false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(500, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,189 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperties;
+import se.thinkware.gocd.dockerpoller.message.PackageMaterialProperty;
+import se.thinkware.gocd.dockerpoller.message.PackageRevisionMessage;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RevisionPrefetcherTests {
+
+    // Refreshes are triggered by the tests, the scheduler never gets to run them.
+    private final Duration interval = Duration.ofHours(1);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final MovableClock clock = new MovableClock();
+
+    private final RevisionPrefetcher prefetcher = new RevisionPrefetcher(
+            (packageConfiguration, repositoryConfiguration) -> new PackageRevisionMessage(
+                    packageConfiguration.getProperty(Constants.DOCKER_TAG_FILTER).value() + loads.incrementAndGet(),
+                    new Date(), "docker", null, null),
+            interval,
+            interval.multipliedBy(10),
+            scheduler,
+            clock
+    );
+
+    private static class MovableClock extends Clock {
+        Instant now = Instant.parse("2018-01-01T12:00:00Z");
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    @AfterEach
+    void stopScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    private static PackageMaterialProperties packageConfiguration(String filter) {
+        PackageMaterialProperties packageConfiguration = new PackageMaterialProperties();
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_IMAGE, new PackageMaterialProperty().withValue("my_docker"));
+        packageConfiguration.addPackageMaterialProperty(Constants.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue(filter));
+        return packageConfiguration;
+    }
+
+    private static PackageMaterialProperties repositoryConfiguration() {
+        PackageMaterialProperties repositoryConfiguration = new PackageMaterialProperties();
+        repositoryConfiguration.addPackageMaterialProperty(Constants.DOCKER_REGISTRY_URL, new PackageMaterialProperty().withValue("http://xxx/v2/"));
+        return repositoryConfiguration;
+    }
+
+    @Test
+    void answersFromLastRefreshTest() {
+        assertEquals("a1", prefetcher.getLatestRevision(packageConfiguration("a"), repositoryConfiguration()).getRevision());
+        assertEquals("a1", prefetcher.getLatestRevision(packageConfiguration("a"), repositoryConfiguration()).getRevision());
+        assertEquals(1, loads.get());
+
+        prefetcher.refreshAll();
+        assertEquals("a2", prefetcher.getLatestRevision(packageConfiguration("a"), repositoryConfiguration()).getRevision());
+        assertEquals(2, loads.get());
+
+        // Another filter is another material.
+        assertEquals("b3", prefetcher.getLatestRevision(packageConfiguration("b"), repositoryConfiguration()).getRevision());
+        assertEquals(2, prefetcher.size());
+    }
+
+    @Test
+    void keepsRevisionWhenRefreshFailsTest() {
+        AtomicInteger failing = new AtomicInteger();
+        RevisionPrefetcher flaky = new RevisionPrefetcher(
+                (packageConfiguration, repositoryConfiguration) -> {
+                    if (loads.incrementAndGet() > 1 && failing.get() > 0) {
+                        return new PackageRevisionMessage();
+                    }
+                    return new PackageRevisionMessage("a" + loads.get(), new Date(), "docker", null, null);
+                },
+                interval,
+                interval.multipliedBy(10),
+                scheduler,
+                clock
+        );
+        assertEquals("a1", flaky.getLatestRevision(packageConfiguration("a"), repositoryConfiguration()).getRevision());
+
+        failing.set(1);
+        flaky.refreshAll();
+        assertEquals(2, loads.get());
+        assertEquals("a1", flaky.getLatestRevision(packageConfiguration("a"), repositoryConfiguration()).getRevision());
+
+        failing.set(0);
+        flaky.refreshAll();
+        assertEquals("a3", flaky.getLatestRevision(packageConfiguration("a"), repositoryConfiguration()).getRevision());
+    }
+
+    @Test
+    void failedRefreshesBackOffTest() {
+        AtomicInteger calls = new AtomicInteger();
+        RevisionPrefetcher flaky = new RevisionPrefetcher(
+                (packageConfiguration, repositoryConfiguration) -> {
+                    if (calls.incrementAndGet() == 2) {
+                        throw new IllegalStateException("Registry is down");
+                    }
+                    return calls.get() == 1
+                            ? new PackageRevisionMessage("a1", new Date(), "docker", null, null)
+                            : new PackageRevisionMessage();
+                },
+                interval,
+                interval.multipliedBy(10),
+                scheduler,
+                clock
+        );
+        flaky.getLatestRevision(packageConfiguration("a"), repositoryConfiguration());
+        assertEquals(interval.toMillis(), flaky.refreshDelayMillis(packageConfiguration("a"), repositoryConfiguration()));
+
+        flaky.refreshAll();
+        assertEquals(2 * interval.toMillis(), flaky.refreshDelayMillis(packageConfiguration("a"), repositoryConfiguration()));
+        flaky.refreshAll();
+        assertEquals(4 * interval.toMillis(), flaky.refreshDelayMillis(packageConfiguration("a"), repositoryConfiguration()));
+        assertEquals("a1", flaky.getLatestRevision(packageConfiguration("a"), repositoryConfiguration()).getRevision());
+    }
+
+    @Test
+    void backsOffOnlyWhenConfiguredOrNotifiedTest() {
+        RevisionPrefetcher.Loader loader = (packageConfiguration, repositoryConfiguration) -> new PackageRevisionMessage();
+        assertEquals(Duration.ofSeconds(RevisionPrefetcher.DEFAULT_REFRESH_INTERVAL_SECONDS),
+                RevisionPrefetcher.fromSystemProperties(loader, false).getMaxRefreshInterval());
+        assertEquals(Duration.ofSeconds(RevisionPrefetcher.DEFAULT_MAX_REFRESH_INTERVAL_SECONDS),
+                RevisionPrefetcher.fromSystemProperties(loader, true).getMaxRefreshInterval());
+        System.setProperty(Constants.MAX_REFRESH_INTERVAL_PROPERTY, "300");
+        try {
+            assertEquals(Duration.ofSeconds(300), RevisionPrefetcher.fromSystemProperties(loader, false).getMaxRefreshInterval());
+        } finally {
+            System.clearProperty(Constants.MAX_REFRESH_INTERVAL_PROPERTY);
+        }
+    }
+
+    @Test
+    void forgetsMaterialsNoLongerAskedForTest() {
+        prefetcher.getLatestRevision(packageConfiguration("a"), repositoryConfiguration());
+        clock.now = clock.now.plus(interval.multipliedBy(RevisionPrefetcher.IDLE_REFRESHES));
+        prefetcher.refreshAll();
+        assertEquals(1, prefetcher.size());
+        assertEquals(2, loads.get());
+
+        clock.now = clock.now.plusSeconds(1);
+        prefetcher.refreshAll();
+        assertEquals(0, prefetcher.size());
+        assertEquals(2, loads.get());
+
+        assertEquals("a3", prefetcher.getLatestRevision(packageConfiguration("a"), repositoryConfiguration()).getRevision());
+    }
+
+    @Test
+    void refreshesImageRightAwayTest() throws InterruptedException {
+        prefetcher.getLatestRevision(packageConfiguration("a"), repositoryConfiguration());
+
+        prefetcher.refreshImage("other_docker");
+        prefetcher.refreshImage("/my_docker");
+        for (int i = 0; i < 100 && loads.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(2, loads.get());
+        assertEquals("a2", prefetcher.getLatestRevision(packageConfiguration("a"), repositoryConfiguration()).getRevision());
+    }
+}
@@ -0,0 +1,93 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTests {
+
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private Thread follower(List<String> results) {
+        Thread thread = new Thread(() -> {
+            try {
+                String result = flights.run("key", () -> "follower");
+                synchronized (results) {
+                    results.add(result);
+                }
+            } catch (IOException e) {
+                synchronized (results) {
+                    results.add(e.getMessage());
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    // Called from within the leader's call, so the followers find it in flight.
+    private void awaitWaiting(List<Thread> threads) throws IOException {
+        long deadline = System.currentTimeMillis() + 10000;
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.WAITING) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Followers never joined");
+                }
+                Thread.yield();
+            }
+        }
+    }
+
+    @Test
+    void concurrentCallersShareResultTest() throws Exception {
+        List<String> results = new ArrayList<>();
+        List<Thread> followers = new ArrayList<>();
+
+        String leader = flights.run("key", () -> {
+            calls.incrementAndGet();
+            followers.add(follower(results));
+            followers.add(follower(results));
+            awaitWaiting(followers);
+            return "leader";
+        });
+        for (Thread thread : followers) {
+            thread.join();
+        }
+
+        assertEquals("leader", leader);
+        assertEquals(1, calls.get());
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch("leader"::equals));
+    }
+
+    @Test
+    void failureIsSharedTest() throws Exception {
+        List<String> results = new ArrayList<>();
+        List<Thread> followers = new ArrayList<>();
+
+        IOException thrown = assertThrows(IOException.class, () -> flights.run("key", () -> {
+            followers.add(follower(results));
+            awaitWaiting(followers);
+            throw new IOException("registry down");
+        }));
+        for (Thread thread : followers) {
+            thread.join();
+        }
+
+        assertEquals("registry down", thrown.getMessage());
+        assertEquals(1, results.size());
+        assertEquals("registry down", results.get(0));
+    }
+
+    @Test
+    void laterCallsStartNewFlightTest() throws IOException {
+        assertEquals("1", flights.run("key", () -> String.valueOf(calls.incrementAndGet())));
+        assertEquals("2", flights.run("key", () -> String.valueOf(calls.incrementAndGet())));
+    }
+}
@@ -0,0 +1,191 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagIndexTests {
+
+    private static List<String> buildTags(int count) {
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tags.add(String.format("build-2018%04d-%d", i / 10, i));
+        }
+        return tags;
+    }
+
+    @Test
+    void keepsTagsSortedWithoutDuplicatesTest() {
+        List<String> tags = new ArrayList<>(buildTags(100));
+        tags.addAll(Arrays.asList("latest", "1.2", "1.10", "\u00e9t\u00e9", "latest", ""));
+        Collections.shuffle(tags);
+        TagIndex index = TagIndex.of(tags);
+
+        List<String> expected = new ArrayList<>(new TreeSet<>(tags));
+        List<String> actual = new ArrayList<>();
+        index.forEach(actual::add);
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), index.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), index.get(i));
+        }
+    }
+
+    @Test
+    void builderTest() {
+        TagIndex.Builder builder = new TagIndex.Builder();
+        assertSame(TagIndex.empty(), builder.build());
+        buildTags(100).forEach(builder);
+        buildTags(10).forEach(builder);
+        List<String> actual = new ArrayList<>();
+        builder.build().forEach(actual::add);
+        assertEquals(new ArrayList<>(new TreeSet<>(buildTags(100))), actual);
+    }
+
+    @Test
+    void writeReadTest() throws IOException {
+        TagIndex index = TagIndex.of(buildTags(100));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+        TagIndex.empty().writeTo(new DataOutputStream(bytes));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        TagIndex read = TagIndex.readFrom(in);
+        List<String> actual = new ArrayList<>();
+        read.forEach(actual::add);
+        assertEquals(new ArrayList<>(new TreeSet<>(buildTags(100))), actual);
+        assertEquals("build-20180009-99", read.latest(TagOrder.NATURAL, null));
+        assertSame(TagIndex.empty(), TagIndex.readFrom(in));
+
+        byte[] corrupt = bytes.toByteArray();
+        corrupt[11] = 1;
+        assertThrows(IOException.class, () -> TagIndex.readFrom(new DataInputStream(new ByteArrayInputStream(corrupt))));
+    }
+
+    private static byte[] bytesOf(TagIndex index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static void assertCorrupt(byte[] bytes) {
+        assertThrows(IOException.class, () -> TagIndex.readFrom(new DataInputStream(new ByteArrayInputStream(bytes))));
+    }
+
+    @Test
+    void readCorruptTest() throws IOException {
+        // size, maxLength, blockCount, one block at 0, dataLength, then 1 'a' 0 1 'b'
+        byte[] valid = bytesOf(TagIndex.of(Arrays.asList("a", "b")));
+        int data = 20;
+        TagIndex.readFrom(new DataInputStream(new ByteArrayInputStream(valid)));
+
+        byte[] huge = valid.clone();
+        ByteBuffer.wrap(huge).putInt(0, 1 << 30).putInt(8, 1 << 26);
+        assertCorrupt(huge);
+
+        byte[] outside = valid.clone();
+        outside[data] = (byte) 0x81;
+        outside[data + 1] = (byte) 0x80;
+        outside[data + 2] = (byte) 0x80;
+        outside[data + 3] = (byte) 0x80;
+        outside[data + 4] = (byte) 0x80;
+        assertCorrupt(outside);
+
+        byte[] tooLong = valid.clone();
+        tooLong[data] = 3;
+        assertCorrupt(tooLong);
+
+        byte[] shared = valid.clone();
+        shared[data + 2] = 2;
+        assertCorrupt(shared);
+
+        byte[] unsorted = valid.clone();
+        unsorted[data + 4] = 'a';
+        assertCorrupt(unsorted);
+
+        byte[] blocks = bytesOf(TagIndex.of(buildTags(100)));
+        ByteBuffer buffer = ByteBuffer.wrap(blocks);
+        int second = buffer.getInt(16);
+        buffer.putInt(16, buffer.getInt(20)).putInt(20, second);
+        assertCorrupt(blocks);
+    }
+
+    @Test
+    void containsTest() {
+        TagIndex index = TagIndex.of(buildTags(100));
+        for (String tag : buildTags(100)) {
+            assertTrue(index.contains(tag), tag);
+        }
+        assertFalse(index.contains(""));
+        assertFalse(index.contains("a"));
+        assertFalse(index.contains("build-20180001-1x"));
+        assertFalse(index.contains("build-20180009-"));
+        assertFalse(index.contains("zzz"));
+        assertFalse(TagIndex.empty().contains("a"));
+    }
+
+    @Test
+    void diffTest() {
+        List<String> before = buildTags(100);
+        List<String> after = new ArrayList<>(buildTags(120));
+        after.removeAll(Arrays.asList("build-20180000-0", "build-20180004-47", "build-20180009-99"));
+        after.add("latest");
+
+        List<String> removed = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        TagIndex.diff(TagIndex.of(before), TagIndex.of(after), removed::add, added::add);
+
+        assertEquals(Arrays.asList("build-20180000-0", "build-20180004-47", "build-20180009-99"), removed);
+        List<String> expectedAdded = new ArrayList<>(buildTags(120).subList(100, 120));
+        expectedAdded.add("latest");
+        assertEquals(expectedAdded, added);
+
+        added.clear();
+        TagIndex.diff(TagIndex.empty(), TagIndex.of(before), removed::add, added::add);
+        assertEquals(new ArrayList<>(new TreeSet<>(before)), added);
+    }
+
+    @Test
+    void topTest() {
+        TagIndex index = TagIndex.of(Arrays.asList("1.2.0", "1.10.0", "1.9.0-rc.1", "latest", "2.0.0-beta", "hotfix-1"));
+        assertEquals(Arrays.asList("latest", "hotfix-1", "2.0.0-beta"), index.top(TagOrder.NATURAL, null, 3));
+        assertEquals(Arrays.asList("2.0.0-beta", "1.10.0", "1.9.0-rc.1", "1.2.0"), index.top(TagOrder.SEMVER, null, 10));
+        assertEquals("1.10.0", index.latest(TagOrder.SEMVER, Pattern.compile("^1\\.")));
+        assertEquals("1.9.0-rc.1", index.latest(TagOrder.LEXICOGRAPHIC, Pattern.compile("^1\\.")));
+        assertNull(index.latest(TagOrder.NUMERIC, null));
+    }
+
+    @Test
+    void afterTest() {
+        TagIndex index = TagIndex.of(Arrays.asList("1.2.0", "1.10.0", "1.9.0-rc.1", "1.9.0", "2.0.0-beta", "hotfix-1"));
+        assertEquals("1.9.0-rc.1", index.after(TagOrder.SEMVER, null, TagOrder.SEMVER.key("1.2.0")));
+        assertEquals("1.9.0", index.after(TagOrder.SEMVER, null, TagOrder.SEMVER.key("1.9.0-rc.1")));
+        assertEquals("1.9.0-rc.1", index.after(TagOrder.SEMVER, null, TagOrder.SEMVER.key("1.3.0")));
+        assertEquals("1.10.0", index.after(TagOrder.SEMVER, Pattern.compile("^1\\.1"), TagOrder.SEMVER.key("1.2.0")));
+        assertNull(index.after(TagOrder.SEMVER, null, TagOrder.SEMVER.key("2.0.0-beta")));
+        assertEquals("hotfix-1", index.after(TagOrder.NATURAL, null, TagOrder.NATURAL.key("2.0.0-beta")));
+    }
+
+    @Test
+    void smallerThanTheTagsTest() {
+        List<String> tags = buildTags(10000);
+        int stringBytes = 0;
+        for (String tag : tags) {
+            stringBytes += tag.length();
+        }
+        assertTrue(TagIndex.of(tags).memoryBytes() < stringBytes / 2);
+    }
+}
@@ -0,0 +1,141 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagOrderTests {
+
+    private static void assertAscending(TagOrder order, String... tags) {
+        for (int i = 1; i < tags.length; i++) {
+            long[] smaller = order.key(tags[i - 1]);
+            long[] bigger = order.key(tags[i]);
+            assertNotNull(smaller, tags[i - 1]);
+            assertNotNull(bigger, tags[i]);
+            assertTrue(TagOrder.compare(smaller, bigger) < 0, tags[i - 1] + " < " + tags[i]);
+        }
+    }
+
+    private static int compareNatural(String first, String second) {
+        return TagOrder.compare(TagOrder.NATURAL.key(first), TagOrder.NATURAL.key(second));
+    }
+
+    @Test
+    void expandNumsTest() {
+        assertEquals("000123.000001-X", ExpandNums.expandNums("123.1-X"));
+    }
+
+    // Runs of digits compare by their value, everything else character by
+    // character, and a number meets a non-digit as a '0'. That is the order
+    // of the zero padding we used to do with expandNums.
+    @Test
+    void naturalSameAsExpandNumsTest() {
+        List<String> tags = Arrays.asList(
+                "", "1", "01", "1.1", "1.2", "1.10", "1.100", "1.11", "2.0", "10.0", "1.2.3",
+                "1.2.3-rc1", "1.2.3-rc10", "v1.2", "v1.10", "latest", "1a", "1-a", "a1", "a01",
+                "release-2018", "release-0", "0", "000", "999999", "1.0.0_beta", "1.0.0.beta", "\u00e9t\u00e9-1"
+        );
+        for (String first : tags) {
+            for (String second : tags) {
+                int expected = Integer.signum(
+                        ExpandNums.expandNums(first).compareTo(ExpandNums.expandNums(second)));
+                assertEquals(expected, compareNatural(first, second), first + " <=> " + second);
+            }
+        }
+    }
+
+    @Test
+    void naturalLongNumbersTest() {
+        assertTrue(compareNatural("20180101120000", "999999") > 0);
+        assertTrue(compareNatural("build-99999999999999999999", "build-100000000000000000000") < 0);
+        assertTrue(compareNatural("build-123456789012345678901234567890", "build-123456789012345678901234567891") < 0);
+        assertEquals(0, compareNatural("v0012345678901", "v12345678901"));
+    }
+
+    @Test
+    void semverTest() {
+        // The precedence example of the specification.
+        assertAscending(TagOrder.SEMVER,
+                "1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-alpha.beta", "1.0.0-beta", "1.0.0-beta.2",
+                "1.0.0-beta.11", "1.0.0-rc.1", "1.0.0", "1.0.1", "1.1.0", "2.0.0");
+        assertAscending(TagOrder.SEMVER, "1.0.0-abcdefgh", "1.0.0-abcdefgh.1", "1.0.0-abcdefghi", "v1.0.0");
+        assertEquals(0, TagOrder.compare(TagOrder.SEMVER.key("1.0.0+build.1"), TagOrder.SEMVER.key("v1.0.0")));
+        assertNull(TagOrder.SEMVER.key("latest"));
+        assertNull(TagOrder.SEMVER.key("1.2"));
+        assertNull(TagOrder.SEMVER.key("01.2.3"));
+        assertNull(TagOrder.SEMVER.key("1.2.3-01"));
+    }
+
+    @Test
+    void dateTest() {
+        assertAscending(TagOrder.DATE,
+                "build-2017-12-31", "2018.01.02-1", "2018.01.02-2", "20180102", "2018-01-02T03-04-05",
+                "1514862245", "1514862245001", "release-20180102-0405");
+        assertEquals(1514862245000L, TagOrder.dateMillis("2018-01-02T03:04:05"));
+        assertEquals(1514862000000L, TagOrder.dateMillis("2018010203"));
+        assertEquals(1514862000000L, TagOrder.dateMillis("build-2018010203-7"));
+        assertEquals(1514862245000L, TagOrder.dateMillis("1514862245"));
+        assertNull(TagOrder.DATE.key("20180102030"));
+        assertNull(TagOrder.DATE.key("latest"));
+        assertNull(TagOrder.DATE.key("2018-13-02"));
+        assertNull(TagOrder.DATE.key("1.2.3"));
+    }
+
+    // Git shas that start with digits are not dates, even when the first
+    // four digits would make a year.
+    @Test
+    void dateShaTagsTest() {
+        assertNull(TagOrder.DATE.key("31ab1201"));
+        assertNull(TagOrder.DATE.key("31ab12019f3c"));
+        assertNull(TagOrder.DATE.key("99f1e2c4"));
+        List<String> tags = Arrays.asList("31ab1201", "2018-01-02", "99f1e2c4", "20171231", "45de0102aa");
+        String latest = null;
+        for (String tag : tags) {
+            long[] key = TagOrder.DATE.key(tag);
+            if (key != null && (latest == null || TagOrder.compare(key, TagOrder.DATE.key(latest)) > 0)) {
+                latest = tag;
+            }
+        }
+        assertEquals("2018-01-02", latest);
+    }
+
+    @Test
+    void naturalHighCharsTest() {
+        assertTrue(compareNatural("\u8000", "\u7fff") > 0);
+        assertTrue(compareNatural("\uffff", "\u8000") > 0);
+        assertTrue(compareNatural("1-\uffff", "1-a") > 0);
+        for (long element : TagOrder.NATURAL.key("\uffff1\u8000")) {
+            assertTrue(element >= 0);
+        }
+    }
+
+    @Test
+    void numericTest() {
+        assertAscending(TagOrder.NUMERIC, "0", "9", "010", "11", "99999999999999999999", "100000000000000000000");
+        assertNull(TagOrder.NUMERIC.key("1.2"));
+        assertNull(TagOrder.NUMERIC.key(""));
+    }
+
+    @Test
+    void lexicographicTest() {
+        List<String> tags = Arrays.asList("", "1", "1.10", "1.2", "1.2.3", "a", "ab", "abc", "abcd", "B", "\u00e9");
+        for (String first : tags) {
+            for (String second : tags) {
+                int expected = Integer.signum(first.compareTo(second));
+                int actual = TagOrder.compare(TagOrder.LEXICOGRAPHIC.key(first), TagOrder.LEXICOGRAPHIC.key(second));
+                assertEquals(expected, actual, first + " <=> " + second);
+            }
+        }
+    }
+
+    @Test
+    void fromPropertyValueTest() {
+        assertEquals(TagOrder.NATURAL, TagOrder.fromPropertyValue(null));
+        assertEquals(TagOrder.NATURAL, TagOrder.fromPropertyValue(" "));
+        assertEquals(TagOrder.SEMVER, TagOrder.fromPropertyValue("SemVer"));
+        assertNull(TagOrder.fromPropertyValue("alphabetical"));
+    }
+}
@@ -0,0 +1,110 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagSetTrackerTests {
+
+    private final TagSetTracker tracker = new TagSetTracker();
+    private final Pattern all = Pattern.compile(".*");
+    private final Pattern release = Pattern.compile("^release-");
+
+    @Test
+    void unknownImageHasNoLatestTest() {
+        assertNull(tracker.latest("image", ".*", all));
+    }
+
+    @Test
+    void addedTagsUpdateLatestTest() {
+        tracker.update("image", Arrays.asList("1.1", "1.2", "release-1"));
+        assertEquals("release-1", tracker.latest("image", ".*", all));
+        assertEquals("release-1", tracker.latest("image", "^release-", release));
+
+        tracker.update("image", Arrays.asList("1.1", "1.2", "release-1", "1.10", "release-2"));
+        assertEquals("release-2", tracker.latest("image", ".*", all));
+        assertEquals("release-2", tracker.latest("image", "^release-", release));
+    }
+
+    @Test
+    void removedBestIsRecomputedTest() {
+        tracker.update("image", Arrays.asList("1.1", "1.2", "1.3"));
+        assertEquals("1.3", tracker.latest("image", ".*", all));
+
+        tracker.update("image", Arrays.asList("1.1", "1.2"));
+        assertEquals("1.2", tracker.latest("image", ".*", all));
+
+        tracker.update("image", Collections.emptyList());
+        assertNull(tracker.latest("image", ".*", all));
+    }
+
+    @Test
+    void filterThatMissedChangesIsRecomputedTest() {
+        tracker.update("image", Arrays.asList("release-1"));
+        assertEquals("release-1", tracker.latest("image", "^release-", release));
+
+        tracker.update("image", Arrays.asList("release-1", "release-2"));
+        tracker.update("image", Arrays.asList("release-1", "release-2", "release-3"));
+        assertEquals("release-3", tracker.latest("image", "^release-", release));
+    }
+
+    @Test
+    void removedTagsOtherThanBestKeepLatestTest() {
+        tracker.update("image", Arrays.asList("1.1", "1.2", "1.3"));
+        assertEquals("1.3", tracker.latest("image", ".*", all));
+
+        tracker.update("image", Arrays.asList("1.3", "1.4"));
+        assertEquals("1.4", tracker.latest("image", ".*", all));
+    }
+
+    @Test
+    void filtersOfSameImageAreUpdatedTogetherTest() {
+        Pattern hotfix = Pattern.compile("^hotfix-");
+        tracker.update("image", Arrays.asList("release-1", "hotfix-1"));
+        assertEquals("release-1", tracker.latest("image", "^release-", release));
+        assertEquals("hotfix-1", tracker.latest("image", "^hotfix-", hotfix));
+
+        tracker.update("image", Arrays.asList("release-2", "hotfix-1", "hotfix-2"));
+        assertEquals("release-2", tracker.latest("image", "^release-", release));
+        assertEquals("hotfix-2", tracker.latest("image", "^hotfix-", hotfix));
+
+        // Only one filter asks in between, the other one is recomputed when it asks.
+        tracker.update("image", Arrays.asList("release-2", "hotfix-3"));
+        assertEquals("release-2", tracker.latest("image", "^release-", release));
+        tracker.update("image", Arrays.asList("release-3", "hotfix-3"));
+        assertEquals("release-3", tracker.latest("image", "^release-", release));
+        assertEquals("hotfix-3", tracker.latest("image", "^hotfix-", hotfix));
+    }
+
+    @Test
+    void changedTagsAreOnlyKeptUntilConsumedTest() {
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            tags.add("build-" + i);
+        }
+        tracker.update("image", tags);
+        assertEquals(0, tracker.changedTags("image"));
+        tracker.seed("seeded", TagIndex.of(tags));
+        assertEquals(0, tracker.changedTags("seeded"));
+        assertEquals("build-99999", tracker.latest("image", ".*", all));
+
+        tags.add("build-100000");
+        tags.remove("build-0");
+        tracker.update("image", tags);
+        assertEquals(2, tracker.changedTags("image"));
+        assertEquals("build-100000", tracker.latest("image", ".*", all));
+        assertEquals(0, tracker.changedTags("image"));
+
+        // Unchanged tags keep what the filters know.
+        tracker.update("image", tags);
+        assertEquals(0, tracker.changedTags("image"));
+        assertEquals("build-100000", tracker.latest("image", ".*", all));
+        assertEquals("build-100000", tracker.latest("image", "^build-", Pattern.compile("^build-")));
+    }
+}
@@ -0,0 +1,120 @@
+package se.thinkware.gocd.dockerpoller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TagSnapshotStoreTests {
+
+    private static final String URL = "http://xxx/v2/my_docker/tags/list";
+
+    private final Clock clock = Clock.fixed(Instant.parse("2018-01-02T03:04:05Z"), ZoneOffset.UTC);
+    private final List<Runnable> queued = new ArrayList<>();
+
+    private Path file;
+
+    @BeforeEach
+    void createFile() throws IOException {
+        file = Files.createTempFile("tag-snapshots", ".bin");
+        Files.delete(file);
+    }
+
+    @AfterEach
+    void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static TagListCache.Entry entry(String etag, String... tags) {
+        TagListCache.Entry entry = new TagListCache.Entry(etag, null);
+        entry.setTags(TagIndex.of(Arrays.asList(tags)));
+        entry.putLatest(".*", tags[tags.length - 1]);
+        entry.putDigest(tags[tags.length - 1], "sha256:" + tags[tags.length - 1]);
+        return entry;
+    }
+
+    @Test
+    void savesTagsAndDigestsTest() {
+        new TagSnapshotStore(file).save(Collections.singletonMap(URL, entry("\"v1\"", "1.1", "1.2")));
+
+        TagListCache.Entry loaded = new TagSnapshotStore(file).load().get(URL);
+        assertEquals("\"v1\"", loaded.validator());
+        assertEquals("1.2", loaded.getLatest(".*"));
+        assertEquals("sha256:1.2", loaded.getDigest("1.2"));
+        assertEquals(2, loaded.getTags().size());
+        assertEquals("1.2", loaded.getTags().latest(TagOrder.NATURAL, null));
+    }
+
+    @Test
+    void failedSaveLeavesNoFileBehindTest() throws IOException {
+        Path directory = Files.createTempDirectory("tag-snapshots");
+        try {
+            // Too long for writeUTF, so the write fails halfway through.
+            char[] longUrl = new char[70000];
+            Arrays.fill(longUrl, 'x');
+            new TagSnapshotStore(directory.resolve("snapshots.bin"))
+                    .save(Collections.singletonMap(new String(longUrl), entry("\"v1\"", "1.1")));
+
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(0, files.count());
+            }
+        } finally {
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void savesInTheBackgroundTest() {
+        TagSnapshotStore store = new TagSnapshotStore(file, Duration.ZERO, clock, queued::add);
+
+        store.saveIfDue(Collections.singletonMap(URL, entry("\"v1\"", "1.1")));
+        assertFalse(Files.exists(file));
+        // Not while the one before is waiting to be written.
+        store.saveIfDue(Collections.singletonMap(URL, entry("\"v2\"", "1.2")));
+        assertEquals(1, queued.size());
+
+        queued.remove(0).run();
+        assertEquals("\"v1\"", new TagSnapshotStore(file).load().get(URL).validator());
+        store.saveIfDue(Collections.singletonMap(URL, entry("\"v2\"", "1.2")));
+        assertEquals(1, queued.size());
+    }
+
+    @Test
+    void olderSnapshotIsNotWrittenOverNewerTest() {
+        TagSnapshotStore store = new TagSnapshotStore(file, Duration.ZERO, clock, queued::add);
+
+        store.saveIfDue(Collections.singletonMap(URL, entry("\"v1\"", "1.1")));
+        // As on shutdown, before the background save got to run.
+        store.save(Collections.singletonMap(URL, entry("\"v2\"", "1.2")));
+        queued.remove(0).run();
+
+        assertEquals("\"v2\"", new TagSnapshotStore(file).load().get(URL).validator());
+    }
+
+    @Test
+    void ignoresOtherVersionsTest() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(0x44504f4c);
+            out.writeInt(TagSnapshotStore.VERSION - 1);
+            out.writeInt(0);
+        }
+        Map<String, TagListCache.Entry> loaded = new TagSnapshotStore(file).load();
+        assertTrue(loaded.isEmpty());
+    }
+}
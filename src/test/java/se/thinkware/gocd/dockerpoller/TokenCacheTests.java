@@ -0,0 +1,47 @@
+package se.thinkware.gocd.dockerpoller;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCacheTests {
+
+    private final Instant start = Instant.parse("2018-01-01T12:00:00Z");
+
+    private static TokenCache.TokenSource source(String json) {
+        return () -> new Gson().fromJson(json, TokenResponse.class);
+    }
+
+    @Test
+    void reusesTokenUntilShortlyBeforeExpiryTest() throws IOException {
+        TokenCache early = new TokenCache(Clock.fixed(start, ZoneOffset.UTC));
+        assertEquals("a", early.getToken("realm", "svc", "scope", source("{\"token\":\"a\",\"expires_in\":300}")));
+        assertEquals("a", early.getToken("realm", "svc", "scope", source("{\"token\":\"b\",\"expires_in\":300}")));
+
+        TokenCache late = new TokenCache(Clock.fixed(start.plusSeconds(295), ZoneOffset.UTC));
+        late.getToken("realm", "svc", "scope", source("{\"token\":\"a\",\"expires_in\":300,\"issued_at\":\"2018-01-01T12:00:00Z\"}"));
+        assertEquals("b", late.getToken("realm", "svc", "scope", source("{\"token\":\"b\",\"expires_in\":300}")));
+    }
+
+    @Test
+    void tokensAreKeyedByScopeTest() throws IOException {
+        TokenCache cache = new TokenCache(Clock.fixed(start, ZoneOffset.UTC));
+        assertEquals("a", cache.getToken("realm", "svc", "repository:a:pull", source("{\"token\":\"a\"}")));
+        assertEquals("b", cache.getToken("realm", "svc", "repository:b:pull", source("{\"access_token\":\"b\"}")));
+        assertEquals("a", cache.getToken("realm", "svc", "repository:a:pull", source("{\"token\":\"c\"}")));
+    }
+
+    @Test
+    void invalidateDropsTokenTest() throws IOException {
+        TokenCache cache = new TokenCache(Clock.fixed(start, ZoneOffset.UTC));
+        cache.getToken("realm", null, null, source("{\"token\":\"a\"}"));
+        cache.invalidate("realm", null, null);
+        assertEquals("b", cache.getToken("realm", null, null, source("{\"token\":\"b\"}")));
+    }
+}